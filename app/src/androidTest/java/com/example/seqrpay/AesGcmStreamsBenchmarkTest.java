@@ -0,0 +1,120 @@
+package com.example.seqrpay;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Throughput of the chunked stream API (SecurityUtils.encryptStream/decryptStream) against the
+ * whole-String API (SecurityUtils.encrypt/decrypt) on the same statement-like text.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AesGcmStreamsBenchmarkTest {
+    private static final String TAG = "AesGcmStreamsBenchmark";
+    private static final int PAYLOAD_BYTES = 4 * 1024 * 1024;
+    private static final int ROUNDS = 5;
+    private static final int IO_BUFFER = 8 * 1024;
+
+    private static String aesKey;
+    private static String text;
+    private static byte[] textBytes;
+
+    @BeforeClass
+    public static void setUp() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        aesKey = Base64.encodeToString(key, Base64.NO_WRAP);
+        StringBuilder sb = new StringBuilder(PAYLOAD_BYTES);
+        for (int i = 0; sb.length() < PAYLOAD_BYTES; i++) {
+            sb.append("2025-05-01T10:00:00Z,Coffee shop ").append(i).append(",-4.50,USD\n");
+        }
+        sb.setLength(PAYLOAD_BYTES);
+        text = sb.toString();
+        textBytes = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void encryptThroughput() throws Exception {
+        assertEquals(text, SecurityUtils.decrypt(SecurityUtils.encrypt(text, aesKey), aesKey));
+        assertArrayEquals(textBytes, streamDecrypt(streamEncrypt()));
+
+        long stringNanos = Long.MAX_VALUE;
+        long streamNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            SecurityUtils.encrypt(text, aesKey);
+            stringNanos = Math.min(stringNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            streamEncrypt();
+            streamNanos = Math.min(streamNanos, System.nanoTime() - start);
+        }
+        report("encrypt", stringNanos, streamNanos);
+    }
+
+    @Test
+    public void decryptThroughput() throws Exception {
+        String sealedString = SecurityUtils.encrypt(text, aesKey);
+        byte[] sealedStream = streamEncrypt();
+
+        long stringNanos = Long.MAX_VALUE;
+        long streamNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            SecurityUtils.decrypt(sealedString, aesKey);
+            stringNanos = Math.min(stringNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            streamDecrypt(sealedStream);
+            streamNanos = Math.min(streamNanos, System.nanoTime() - start);
+        }
+        report("decrypt", stringNanos, streamNanos);
+    }
+
+    // Writes the text in IO_BUFFER slices, as a file copy or export would
+    private static byte[] streamEncrypt() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(PAYLOAD_BYTES + 64 * 1024);
+        OutputStream out = SecurityUtils.encryptStream(sink, aesKey);
+        for (int offset = 0; offset < textBytes.length; offset += IO_BUFFER) {
+            out.write(textBytes, offset, Math.min(IO_BUFFER, textBytes.length - offset));
+        }
+        out.close();
+        return sink.toByteArray();
+    }
+
+    private static byte[] streamDecrypt(byte[] sealed) throws Exception {
+        InputStream in = SecurityUtils.decryptStream(new ByteArrayInputStream(sealed), aesKey);
+        ByteArrayOutputStream result = new ByteArrayOutputStream(PAYLOAD_BYTES);
+        byte[] buffer = new byte[IO_BUFFER];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            result.write(buffer, 0, n);
+        }
+        return result.toByteArray();
+    }
+
+    private static void report(String name, long stringNanos, long streamNanos) {
+        Log.i(TAG, String.format("%s %d KiB: String API %.1f MB/s, stream API %.1f MB/s (%.2fx)",
+                name, PAYLOAD_BYTES / 1024, mbPerSecond(stringNanos), mbPerSecond(streamNanos),
+                (double) stringNanos / streamNanos));
+    }
+
+    private static double mbPerSecond(long nanos) {
+        return PAYLOAD_BYTES / 1e6 / (nanos / 1e9);
+    }
+}
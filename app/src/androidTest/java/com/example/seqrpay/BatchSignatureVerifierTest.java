@@ -0,0 +1,145 @@
+package com.example.seqrpay;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * BatchSignatureVerifier over a mixed batch, on a small work-stealing pool like
+ * AppExecutors.computation() and with keys from an in-memory lookup. Instrumented because the
+ * verifier logs and parses JSON through the framework.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchSignatureVerifierTest {
+
+    private static final String[] PAYEES_WITH_KEYS = {"alice", "bob"};
+    private static final String PAYEE_WITHOUT_KEY = "carol";
+
+    private final Map<String, KeyPair> keyPairs = new HashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+    private ForkJoinPool pool;
+    private BatchSignatureVerifier verifier;
+
+    @Before
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        for (String payee : PAYEES_WITH_KEYS) {
+            keyPairs.put(payee, generator.generateKeyPair());
+        }
+        pool = new ForkJoinPool(4);
+        verifier = new BatchSignatureVerifier(pool, new BatchSignatureVerifier.KeyLookup() {
+            @Override
+            public PublicKey publicKeyFor(String payeeUsername) {
+                AtomicInteger count = new AtomicInteger();
+                AtomicInteger raced = lookups.putIfAbsent(payeeUsername, count);
+                (raced != null ? raced : count).incrementAndGet();
+                try {
+                    Thread.sleep(50); // Slow enough that other items for the payee wait for it
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                KeyPair keyPair = keyPairs.get(payeeUsername);
+                return keyPair != null ? keyPair.getPublic() : null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void reportsEveryItemInInputOrder() {
+        List<String> payloads = new ArrayList<>();
+        List<String> expectedPayees = new ArrayList<>();
+        List<BatchSignatureVerifier.Status> expectedStatuses = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            String payee = PAYEES_WITH_KEYS[i % PAYEES_WITH_KEYS.length];
+            boolean tampered = i % 5 == 4;
+            payloads.add(signedPayload(payee, 100 + i, tampered));
+            expectedPayees.add(payee);
+            expectedStatuses.add(tampered ? BatchSignatureVerifier.Status.INVALID : BatchSignatureVerifier.Status.VALID);
+        }
+        payloads.add(3, signedPayload(PAYEE_WITHOUT_KEY, 500, false));
+        expectedPayees.add(3, PAYEE_WITHOUT_KEY);
+        expectedStatuses.add(3, BatchSignatureVerifier.Status.KEY_NOT_FOUND);
+        for (String malformed : Arrays.asList("https://example.com/pay", "{}", null)) {
+            payloads.add(7, malformed);
+            expectedPayees.add(7, null);
+            expectedStatuses.add(7, BatchSignatureVerifier.Status.MALFORMED);
+        }
+
+        BatchSignatureVerifier.BatchResult result = verifier.verify(payloads);
+
+        assertEquals(payloads.size(), result.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            BatchSignatureVerifier.ItemResult item = result.getItems().get(i);
+            assertEquals(i, item.getIndex());
+            assertEquals("item " + i, expectedPayees.get(i), item.getPayeeUsername());
+            assertEquals("item " + i, expectedStatuses.get(i), item.getStatus());
+        }
+        for (BatchSignatureVerifier.Status status : BatchSignatureVerifier.Status.values()) {
+            int expected = 0;
+            for (BatchSignatureVerifier.Status s : expectedStatuses) {
+                if (s == status) expected++;
+            }
+            assertEquals(status.name(), expected, result.count(status));
+        }
+        assertFalse(result.allValid());
+    }
+
+    @Test
+    public void looksUpEachPayeeOnce() {
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            payloads.add(signedPayload(PAYEES_WITH_KEYS[i % PAYEES_WITH_KEYS.length], 100 + i, false));
+        }
+        payloads.add(signedPayload(PAYEE_WITHOUT_KEY, 500, false));
+        payloads.add(signedPayload(PAYEE_WITHOUT_KEY, 600, false));
+
+        BatchSignatureVerifier.BatchResult result = verifier.verify(payloads);
+
+        assertEquals(40, result.count(BatchSignatureVerifier.Status.VALID));
+        assertEquals(2, result.count(BatchSignatureVerifier.Status.KEY_NOT_FOUND));
+        assertEquals(3, result.getDistinctPayees());
+        assertEquals(3, lookups.size());
+        for (Map.Entry<String, AtomicInteger> lookup : lookups.entrySet()) {
+            assertEquals(lookup.getKey(), 1, lookup.getValue().get());
+        }
+    }
+
+    // A binary payment request as GenerateQrActivity produces it, signed with the payee's key if it has one
+    private String signedPayload(String payee, long amountMinor, boolean tampered) {
+        byte[] body = PaymentRequestCodec.encodeBody(payee, amountMinor, "KZT", 1760000000L,
+                SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+        KeyPair keyPair = keyPairs.get(payee);
+        byte[] signature = keyPair != null
+                ? SecurityUtils.signData(body, 0, body.length, keyPair.getPrivate(), SecurityUtils.SIGNATURE_ALGORITHM_P1363)
+                : new byte[SignatureFormats.P256_P1363_LENGTH];
+        if (tampered) {
+            signature[signature.length - 1] ^= 1;
+        }
+        return QrTransport.encode(PaymentRequestCodec.appendSignature(body, signature));
+    }
+}
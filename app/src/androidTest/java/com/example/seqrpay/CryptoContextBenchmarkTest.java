@@ -0,0 +1,164 @@
+package com.example.seqrpay;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Per-operation cost of SecurityUtils with per-thread engines (CryptoContext) against the
+ * previous pattern of calling getInstance() and creating a SecureRandom on every call.
+ * Uses a software EC key so keystore IPC does not drown out the difference.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CryptoContextBenchmarkTest {
+    private static final String TAG = "CryptoContextBenchmark";
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 500;
+    private static final String PAYLOAD = "{\"payeeUsername\":\"merchant\",\"amount\":\"1500\",\"currency\":\"KZT\","
+            + "\"timestamp\":\"2025-05-01T10:00:00Z\"}";
+
+    private static KeyPair keyPair;
+    private static String encodedPublicKey;
+    private static String aesKey;
+
+    @BeforeClass
+    public static void setUpKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        keyPair = generator.generateKeyPair();
+        encodedPublicKey = SecurityUtils.encodePublicKey(keyPair.getPublic());
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        aesKey = Base64.encodeToString(key, Base64.NO_WRAP);
+    }
+
+    @Test
+    public void signAndVerify() throws Exception {
+        String signature = SecurityUtils.signData(PAYLOAD, keyPair.getPrivate());
+        assertTrue(SecurityUtils.verifySignature(PAYLOAD, signature, keyPair.getPublic()));
+        assertTrue(legacyVerify(PAYLOAD, legacySign(PAYLOAD)));
+
+        compare("sign", new Op() {
+            @Override public void run() throws Exception { legacySign(PAYLOAD); }
+        }, new Op() {
+            @Override public void run() { SecurityUtils.signData(PAYLOAD, keyPair.getPrivate()); }
+        });
+        compare("verify", new Op() {
+            @Override public void run() throws Exception { legacyVerify(PAYLOAD, signature); }
+        }, new Op() {
+            @Override public void run() { SecurityUtils.verifySignature(PAYLOAD, signature, keyPair.getPublic()); }
+        });
+    }
+
+    @Test
+    public void decodePublicKey() throws Exception {
+        assertEquals(encodedPublicKey, SecurityUtils.encodePublicKey(SecurityUtils.decodePublicKey(encodedPublicKey)));
+        compare("decodePublicKey", new Op() {
+            @Override public void run() throws Exception {
+                KeyFactory.getInstance("EC").generatePublic(
+                        new X509EncodedKeySpec(Base64.decode(encodedPublicKey, Base64.NO_WRAP)));
+            }
+        }, new Op() {
+            @Override public void run() { SecurityUtils.decodePublicKey(encodedPublicKey); }
+        });
+    }
+
+    @Test
+    public void encryptAndDecrypt() throws Exception {
+        String sealed = SecurityUtils.encrypt(PAYLOAD, aesKey);
+        assertNotNull(sealed);
+        assertEquals(PAYLOAD, SecurityUtils.decrypt(sealed, aesKey));
+
+        compare("encrypt", new Op() {
+            @Override public void run() throws Exception { legacyEncrypt(PAYLOAD); }
+        }, new Op() {
+            @Override public void run() { SecurityUtils.encrypt(PAYLOAD, aesKey); }
+        });
+        compare("decrypt", new Op() {
+            @Override public void run() throws Exception { legacyDecrypt(sealed); }
+        }, new Op() {
+            @Override public void run() { SecurityUtils.decrypt(sealed, aesKey); }
+        });
+    }
+
+    private interface Op {
+        void run() throws Exception;
+    }
+
+    private static void compare(String name, Op legacy, Op cached) throws Exception {
+        double legacyMicros = microsPerOp(legacy);
+        double cachedMicros = microsPerOp(cached);
+        Log.i(TAG, String.format("%s: getInstance per call %.1f us/op, per-thread engines %.1f us/op (%.2fx)",
+                name, legacyMicros, cachedMicros, legacyMicros / cachedMicros));
+    }
+
+    private static double microsPerOp(Op op) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            op.run();
+        }
+        return (System.nanoTime() - start) / 1e3 / ITERATIONS;
+    }
+
+    // --- The per-call pattern SecurityUtils used before CryptoContext ---
+
+    private static byte[] legacySign(String data) throws Exception {
+        Signature signature = Signature.getInstance(SecurityUtils.SIGNATURE_ALGORITHM);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(data.getBytes(StandardCharsets.UTF_8));
+        return signature.sign();
+    }
+
+    private static boolean legacyVerify(String data, byte[] signatureBytes) throws Exception {
+        Signature signature = Signature.getInstance(SecurityUtils.SIGNATURE_ALGORITHM);
+        signature.initVerify(keyPair.getPublic());
+        signature.update(data.getBytes(StandardCharsets.UTF_8));
+        return signature.verify(signatureBytes);
+    }
+
+    private static boolean legacyVerify(String data, String signatureBase64) throws Exception {
+        return legacyVerify(data, Base64.decode(signatureBase64, Base64.URL_SAFE));
+    }
+
+    private static byte[] legacyEncrypt(String data) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Base64.decode(aesKey, Base64.NO_WRAP), "AES"),
+                new GCMParameterSpec(128, iv));
+        return cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String legacyDecrypt(String sealed) throws Exception {
+        byte[] combined = Base64.decode(sealed, Base64.NO_WRAP);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(Base64.decode(aesKey, Base64.NO_WRAP), "AES"),
+                new GCMParameterSpec(128, combined, 0, 12));
+        return new String(cipher.doFinal(combined, 12, combined.length - 12), StandardCharsets.UTF_8);
+    }
+}
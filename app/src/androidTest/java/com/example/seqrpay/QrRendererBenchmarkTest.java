@@ -0,0 +1,141 @@
+package com.example.seqrpay;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.common.BitMatrix;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Per-render time and allocation of QrRenderer (module-resolution encode into two pooled RGB_565
+ * bitmaps) against the per-pixel ARGB_8888 encodeAsBitmap GenerateQrActivity used before.
+ * Java allocations are counted per thread; bitmap pixels live outside the Java heap on newer
+ * releases, so the bitmap bytes each path allocates are reported on their own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QrRendererBenchmarkTest {
+    private static final String TAG = "QrRendererBenchmark";
+    private static final int TARGET_PX = 600;
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 100;
+
+    private interface Render {
+        Bitmap run(Bitmap displayed) throws Exception;
+    }
+
+    @Test
+    public void renderAgainstPerPixelBitmap() throws Exception {
+        final String content = samplePayload();
+        final QrRenderer renderer = new QrRenderer();
+
+        long[] legacy = measure(new Render() {
+            @Override
+            public Bitmap run(Bitmap displayed) throws Exception {
+                if (displayed != null) {
+                    displayed.recycle(); // Left to the GC in the app; recycled here to keep the heap flat
+                }
+                return legacyEncodeAsBitmap(content, TARGET_PX, TARGET_PX);
+            }
+        });
+        long[] pooled = measure(new Render() {
+            @Override
+            public Bitmap run(Bitmap displayed) throws Exception {
+                return renderer.render(content, TARGET_PX, displayed);
+            }
+        });
+
+        Log.i(TAG, String.format("QR render to %d px, %d rounds:", TARGET_PX, ROUNDS));
+        report("per-pixel ARGB_8888", legacy);
+        report("QrRenderer RGB_565", pooled);
+        // The pooled bitmaps were allocated during warm-up; every per-pixel render allocates one
+        assertEquals(0, pooled[2]);
+        assertTrue(legacy[2] > 0);
+    }
+
+    /**
+     * Renders WARMUP + ROUNDS times, passing each result back as the bitmap on screen, as
+     * GenerateQrActivity does.
+     * @return {best nanos, mean nanos, bitmap bytes allocated per render, Java bytes allocated per render}
+     */
+    @SuppressWarnings("deprecation") // Thread allocation counting is deprecated but still works on ART
+    private static long[] measure(Render render) throws Exception {
+        Set<Bitmap> seen = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+        Bitmap displayed = null;
+        for (int i = 0; i < WARMUP; i++) {
+            displayed = render.run(displayed);
+            seen.add(displayed);
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        long totalNanos = 0;
+        long bitmapBytes = 0;
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                Bitmap bitmap = render.run(displayed);
+                long nanos = System.nanoTime() - start;
+                bestNanos = Math.min(bestNanos, nanos);
+                totalNanos += nanos;
+                assertNotNull(bitmap);
+                if (seen.add(bitmap)) {
+                    bitmapBytes += bitmap.getAllocationByteCount();
+                }
+                displayed = bitmap;
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        long javaBytes = Debug.getThreadAllocSize();
+        return new long[]{bestNanos, totalNanos / ROUNDS, bitmapBytes / ROUNDS, javaBytes / ROUNDS};
+    }
+
+    private static void report(String name, long[] result) {
+        Log.i(TAG, String.format("  %-20s best %.1f us, mean %.1f us, %d bitmap bytes + %d Java bytes allocated per render",
+                name, result[0] / 1e3, result[1] / 1e3, result[2], result[3]));
+    }
+
+    // What GenerateQrActivity.encodeAsBitmap did before QrRenderer
+    private static Bitmap legacyEncodeAsBitmap(String content, int width, int height) throws Exception {
+        BitMatrix result = new MultiFormatWriter().encode(content, BarcodeFormat.QR_CODE, width, height, null);
+        int w = result.getWidth();
+        int h = result.getHeight();
+        int[] pixels = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            int offset = y * w;
+            for (int x = 0; x < w; x++) {
+                pixels[offset + x] = result.get(x, y) ? Color.BLACK : Color.WHITE;
+            }
+        }
+        Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(pixels, 0, w, 0, 0, w, h);
+        return bitmap;
+    }
+
+    private static String samplePayload() {
+        byte[] signature = new byte[SignatureFormats.P256_P1363_LENGTH];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = (byte) (i * 37);
+        }
+        byte[] body = PaymentRequestCodec.encodeBody("merchant", 150000, "KZT", 1760000000L,
+                SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+        return QrTransport.encode(PaymentRequestCodec.appendSignature(body, signature));
+    }
+}
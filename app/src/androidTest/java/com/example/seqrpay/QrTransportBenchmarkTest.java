@@ -0,0 +1,143 @@
+package com.example.seqrpay;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Size and decode time of a corpus of payment requests as Base45 (the QR transport), base64url and
+ * the legacy JSON payload: characters, QR modules per side, and time from scanned text to fields.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QrTransportBenchmarkTest {
+    private static final String TAG = "QrTransportBenchmark";
+    private static final int CORPUS_SIZE = 200;
+    private static final int ROUNDS = 20;
+    private static final String[] CURRENCIES = {"USD", "EUR", "KZT", "JPY", "GBP"};
+
+    private static final List<String> base45 = new ArrayList<>();
+    private static final List<String> base64 = new ArrayList<>();
+    private static final List<String> legacyJson = new ArrayList<>();
+
+    @BeforeClass
+    public static void buildCorpus() {
+        Random random = new Random(7);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            String payee = randomUsername(random);
+            String currency = CURRENCIES[random.nextInt(CURRENCIES.length)];
+            long amountMinor = 1 + random.nextInt(10000000);
+            long epochSeconds = 1760000000L + random.nextInt(30000000);
+            byte[] signature = new byte[SignatureFormats.P256_P1363_LENGTH];
+            random.nextBytes(signature);
+            byte[] body = PaymentRequestCodec.encodeBody(payee, amountMinor, currency, epochSeconds,
+                    SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+            byte[] payload = PaymentRequestCodec.appendSignature(body, signature);
+            base45.add(QrTransport.encode(payload));
+            base64.add(QrTransport.encodeBase64Url(payload));
+            legacyJson.add(legacyJson(payee, MoneyUtils.toDecimalString(amountMinor, currency), currency,
+                    epochSeconds, signature));
+        }
+    }
+
+    @Test
+    public void compareTransports() throws Exception {
+        long base45Nanos = timeBinaryDecode(base45);
+        long base64Nanos = timeBinaryDecode(base64);
+        long legacyNanos = timeJsonDecode(legacyJson);
+
+        Log.i(TAG, String.format(Locale.US, "%d payment requests, EC level %s:",
+                CORPUS_SIZE, QrTransport.QR_ERROR_CORRECTION));
+        report("Base45 (alphanumeric)", base45, base45Nanos);
+        report("base64url (byte)", base64, base64Nanos);
+        report("legacy JSON (byte)", legacyJson, legacyNanos);
+    }
+
+    // Best pass over the corpus: transport decode plus PaymentRequestCodec.decode
+    private static long timeBinaryDecode(List<String> texts) {
+        long best = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String text : texts) {
+                sink += PaymentRequestCodec.decode(QrTransport.decode(text)).getAmountMinor();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertTrue(sink > 0);
+        return best;
+    }
+
+    // Best pass over the corpus: what QRScannerActivity and BatchSignatureVerifier do with JSON
+    private static long timeJsonDecode(List<String> texts) throws Exception {
+        long best = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String text : texts) {
+                JSONObject qrJson = new JSONObject(text);
+                assertTrue(PaymentPayloads.isSignedPaymentRequest(qrJson));
+                JSONObject dataToSign = qrJson.getJSONObject(PaymentPayloads.FIELD_DATA_TO_SIGN);
+                sink += PaymentPayloads.canonicalize(dataToSign).length();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertTrue(sink > 0);
+        return best;
+    }
+
+    private static void report(String name, List<String> texts, long decodeNanos) throws Exception {
+        long chars = 0;
+        long modules = 0;
+        for (String text : texts) {
+            QRCode code = Encoder.encode(text, QrTransport.QR_ERROR_CORRECTION, QrTransport.encodeHints());
+            chars += text.length();
+            modules += code.getVersion().getDimensionForVersion() + 2 * QrTransport.QR_MARGIN_MODULES;
+        }
+        Log.i(TAG, String.format(Locale.US, "  %-22s %.1f chars, %.1f modules/side, decode %.2f us",
+                name, chars / (double) CORPUS_SIZE, modules / (double) CORPUS_SIZE,
+                decodeNanos / 1e3 / CORPUS_SIZE));
+    }
+
+    private static String randomUsername(Random random) {
+        String letters = "abcdefghijklmnopqrstuvwxyz0123456789";
+        int length = 4 + random.nextInt(12);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        return sb.toString();
+    }
+
+    // The JSON payload GenerateQrActivity produced before the binary codec, field for field
+    private static String legacyJson(String payee, String amount, String currency, long epochSeconds,
+                                     byte[] signature) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String timestamp = sdf.format(new Date(epochSeconds * 1000));
+        String fields = "\"payeeUsername\":\"" + payee + "\",\"amount\":\"" + amount
+                + "\",\"currency\":\"" + currency + "\",\"timestamp\":\"" + timestamp + "\"";
+        return "{\"type\":\"paymentRequest\",\"version\":\"1.0\"," + fields
+                + ",\"dataToSign\":{" + fields + "}"
+                + ",\"signatureAlgorithm\":\"" + SecurityUtils.SIGNATURE_ALGORITHM_P1363 + "\""
+                + ",\"signature\":\"" + Base64.encodeToString(signature, Base64.NO_WRAP) + "\"}";
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.seqrpay;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented throughput check for bulk ingest. Reports rows/second for per-row
+ * addTransaction, chunked addTransactions and the streaming CSV importer.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TransactionBulkInsertTest {
+    private static final String TAG = "TxBulkInsertTest";
+    private static final String TEST_DB = "bulk_insert_test.db";
+    private static final long USER_ID = 42;
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        dbHelper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void bulkInsertThroughput() {
+        final int perRowCount = 500;
+        final int bulkCount = 5000;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < perRowCount; i++) {
+            assertTrue(dbHelper.addTransaction(USER_ID, "row " + i, -100, "USD", 1_700_000_000_000L + i));
+        }
+        double perRowRate = rate(perRowCount, System.nanoTime() - start);
+
+        List<Transaction> rows = new ArrayList<>(bulkCount);
+        for (int i = 0; i < bulkCount; i++) {
+            rows.add(new Transaction("bulk " + i, 250, "USD", 1_800_000_000_000L + i));
+        }
+        start = System.nanoTime();
+        int inserted = dbHelper.addTransactions(USER_ID, rows, DatabaseHelper.DEFAULT_INGEST_CHUNK_SIZE);
+        double bulkRate = rate(bulkCount, System.nanoTime() - start);
+
+        Log.i(TAG, String.format("addTransaction: %.0f rows/s, addTransactions: %.0f rows/s (%.1fx)",
+                perRowRate, bulkRate, bulkRate / perRowRate));
+        assertEquals(bulkCount, inserted);
+        assertEquals(perRowCount * -100L + bulkCount * 250L, dbHelper.getBalance(USER_ID, "USD"));
+        assertTrue(dbHelper.verifyBalances());
+    }
+
+    @Test
+    public void csvImportThroughput() throws Exception {
+        final int count = 5000;
+        StringBuilder csv = new StringBuilder("date,description,amount,currency\n");
+        for (int i = 0; i < count; i++) {
+            csv.append(1_700_000_000_000L + i).append(",\"Coffee, large\",-3.50,USD\n");
+        }
+        byte[] input = csv.toString().getBytes(StandardCharsets.UTF_8);
+
+        ExecutorService parser = Executors.newSingleThreadExecutor();
+        try {
+            TransactionImporter importer = new TransactionImporter(dbHelper, parser, 500);
+            long start = System.nanoTime();
+            int imported = importer.importFrom(new ByteArrayInputStream(input), TransactionImporter.Format.CSV, USER_ID);
+            Log.i(TAG, String.format("CSV import: %.0f rows/s", rate(count, System.nanoTime() - start)));
+
+            assertEquals(count, imported);
+            assertEquals(count * -350L, dbHelper.getBalance(USER_ID, "USD"));
+        } finally {
+            parser.shutdownNow();
+        }
+    }
+
+    private static double rate(int rows, long nanos) {
+        return rows / (nanos / 1e9);
+    }
+}
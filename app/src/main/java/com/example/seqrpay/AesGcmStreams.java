@@ -0,0 +1,317 @@
+package com.example.seqrpay;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Chunked AES-GCM for data too large to encrypt as one String (backups, statement exports).
+ *
+ * The plaintext is cut into chunks of chunkSize bytes and every chunk is sealed on its own, so
+ * encrypting or decrypting any amount of data needs two chunk-sized buffers and nothing else.
+ *
+ * Format:
+ * <pre>
+ * header:  "SQE" | version (1) | chunkSize (int32) | noncePrefix (7)         = 15 bytes
+ * chunk:   last flag (bit 31) | ciphertext length (bits 0-30) | ciphertext + 16-byte tag
+ * </pre>
+ * Chunk i is sealed with nonce = noncePrefix | i (uint32) | last (0 or 1), and the header as
+ * additional authenticated data. A random prefix per stream keeps nonces unique under one key;
+ * the counter stops chunks from being reordered or dropped; the last flag, being part of the
+ * nonce, means a stream cut at a chunk boundary fails instead of decrypting to a shorter plaintext.
+ * Empty input still produces one (empty) last chunk.
+ *
+ * Pure JCA, no Android classes, so it runs in local unit tests. Errors surface as IOException;
+ * a failed authentication check is an {@link AEADBadTagException} cause.
+ */
+public class AesGcmStreams {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    // Upper bound a reader accepts from a header, so a corrupt header cannot force a huge buffer
+    public static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final byte[] MAGIC = {'S', 'Q', 'E'};
+    private static final byte VERSION = 1;
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    static final int HEADER_LENGTH = MAGIC.length + 1 + 4 + NONCE_PREFIX_LENGTH;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16; // bytes
+    private static final int LAST_CHUNK_FLAG = 0x80000000;
+
+    private AesGcmStreams() {
+    }
+
+    /**
+     * Wraps out so that everything written is encrypted. Call {@link EncryptingOutputStream#finish()}
+     * or close() at the end; without the final chunk the output does not decrypt.
+     * @param key AES key, 16, 24 or 32 bytes.
+     */
+    public static EncryptingOutputStream newEncryptingStream(OutputStream out, byte[] key) throws IOException {
+        return new EncryptingOutputStream(out, key, DEFAULT_CHUNK_SIZE);
+    }
+
+    public static EncryptingOutputStream newEncryptingStream(OutputStream out, byte[] key, int chunkSize)
+            throws IOException {
+        return new EncryptingOutputStream(out, key, chunkSize);
+    }
+
+    /**
+     * Wraps in, which must start with a header written by {@link #newEncryptingStream}. Reads return
+     * only authenticated plaintext; tampering or truncation makes a read throw IOException.
+     * @param key AES key the data was encrypted with.
+     */
+    public static InputStream newDecryptingStream(InputStream in, byte[] key) throws IOException {
+        return new DecryptingInputStream(in, key);
+    }
+
+    // Size of the encrypted form of plaintextLength bytes
+    public static long ciphertextLength(long plaintextLength, int chunkSize) {
+        long chunks = Math.max(1, (plaintextLength + chunkSize - 1) / chunkSize);
+        return HEADER_LENGTH + plaintextLength + chunks * (4 + TAG_LENGTH);
+    }
+
+    private static byte[] chunkNonce(byte[] header, int index, boolean last) {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        System.arraycopy(header, HEADER_LENGTH - NONCE_PREFIX_LENGTH, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return nonce;
+    }
+
+    // Initialises the calling thread's cipher for one chunk
+    private static Cipher chunkCipher(int mode, SecretKeySpec key, byte[] header, int index, boolean last)
+            throws GeneralSecurityException {
+        Cipher cipher = CryptoContext.get().aesGcm();
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, chunkNonce(header, index, last)));
+        cipher.updateAAD(header);
+        return cipher;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+
+    private static SecretKeySpec aesKey(byte[] key) throws IOException {
+        if (key == null || (key.length != 16 && key.length != 24 && key.length != 32)) {
+            throw new IOException("AES key must be 16, 24 or 32 bytes");
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * Encrypting side. Buffers up to one chunk of plaintext; a full chunk is sealed as soon as more
+     * data follows it, and whatever is buffered at finish() becomes the last chunk.
+     */
+    public static class EncryptingOutputStream extends FilterOutputStream {
+        private final SecretKeySpec key;
+        private final byte[] header = new byte[HEADER_LENGTH];
+        private final byte[] plain;
+        private final byte[] sealed; // length prefix + ciphertext + tag
+        private int buffered;
+        private int chunkIndex;
+        private boolean finished;
+
+        EncryptingOutputStream(OutputStream out, byte[] key, int chunkSize) throws IOException {
+            super(out);
+            if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("chunkSize out of range: " + chunkSize);
+            }
+            this.key = aesKey(key);
+            this.plain = new byte[chunkSize];
+            this.sealed = new byte[4 + chunkSize + TAG_LENGTH];
+
+            System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+            header[MAGIC.length] = VERSION;
+            writeInt(header, MAGIC.length + 1, chunkSize);
+            byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+            CryptoContext.RANDOM.nextBytes(prefix);
+            System.arraycopy(prefix, 0, header, HEADER_LENGTH - NONCE_PREFIX_LENGTH, NONCE_PREFIX_LENGTH);
+            out.write(header);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("Stream already finished");
+            }
+            while (len > 0) {
+                if (buffered == plain.length) {
+                    sealChunk(false); // More data follows, so this full chunk is not the last
+                }
+                int n = Math.min(len, plain.length - buffered);
+                System.arraycopy(b, off, plain, buffered, n);
+                buffered += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Seals the buffered data as the last chunk and flushes, leaving the underlying stream open.
+         * Nothing more can be written afterwards.
+         */
+        public void finish() throws IOException {
+            if (finished) return;
+            sealChunk(true);
+            finished = true;
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void sealChunk(boolean last) throws IOException {
+            if (chunkIndex == Integer.MAX_VALUE) {
+                throw new IOException("Too many chunks for one stream");
+            }
+            try {
+                Cipher cipher = chunkCipher(Cipher.ENCRYPT_MODE, key, header, chunkIndex, last);
+                int length = cipher.doFinal(plain, 0, buffered, sealed, 4);
+                writeInt(sealed, 0, last ? length | LAST_CHUNK_FLAG : length);
+                out.write(sealed, 0, 4 + length);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Chunk encryption failed", e);
+            }
+            chunkIndex++;
+            buffered = 0;
+        }
+    }
+
+    private static class DecryptingInputStream extends FilterInputStream {
+        private final SecretKeySpec key;
+        private final byte[] header = new byte[HEADER_LENGTH];
+        private final byte[] sealed;
+        private final byte[] plain;
+        private int plainLength;
+        private int plainPos;
+        private int chunkIndex;
+        private boolean lastSeen;
+
+        DecryptingInputStream(InputStream in, byte[] key) throws IOException {
+            super(in);
+            this.key = aesKey(key);
+            readFully(in, header, 0, HEADER_LENGTH);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || header[MAGIC.length] != VERSION) {
+                throw new IOException("Not an encrypted stream, or an unsupported version");
+            }
+            int chunkSize = readInt(header, MAGIC.length + 1);
+            if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IOException("Invalid chunk size in header: " + chunkSize);
+            }
+            this.sealed = new byte[chunkSize + TAG_LENGTH];
+            this.plain = new byte[chunkSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (plainPos == plainLength) {
+                if (lastSeen) return -1;
+                openChunk();
+            }
+            int n = Math.min(len, plainLength - plainPos);
+            System.arraycopy(plain, plainPos, b, off, n);
+            plainPos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must still be authenticated, so read through them
+            byte[] scratch = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(scratch, 0, (int) Math.min(scratch.length, n - skipped));
+                if (r == -1) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return plainLength - plainPos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void openChunk() throws IOException {
+            byte[] prefix = new byte[4];
+            readFully(in, prefix, 0, 4);
+            int framed = readInt(prefix, 0);
+            boolean last = (framed & LAST_CHUNK_FLAG) != 0;
+            int length = framed & ~LAST_CHUNK_FLAG;
+            if (length < TAG_LENGTH || length > sealed.length) {
+                throw new IOException("Invalid chunk length: " + length);
+            }
+            readFully(in, sealed, 0, length);
+            try {
+                Cipher cipher = chunkCipher(Cipher.DECRYPT_MODE, key, header, chunkIndex, last);
+                plainLength = cipher.doFinal(sealed, 0, length, plain, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Chunk " + chunkIndex + " failed authentication", e);
+            }
+            plainPos = 0;
+            chunkIndex++;
+            if (last) {
+                lastSeen = true;
+                if (in.read() != -1) {
+                    throw new IOException("Unexpected data after the last chunk");
+                }
+            }
+        }
+
+        private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = in.read(b, off, len);
+                if (n == -1) {
+                    throw new EOFException("Encrypted stream is truncated");
+                }
+                off += n;
+                len -= n;
+            }
+        }
+    }
+}
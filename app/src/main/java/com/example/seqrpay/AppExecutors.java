@@ -6,18 +6,32 @@ import android.os.Looper;
 import androidx.annotation.NonNull;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 // Simple utility class for handling background and main thread execution
 public class AppExecutors {
 
+    // Concurrent readers; WAL lets them run alongside the writer. Android's default WAL
+    // connection pool is 4 connections, one of which the writer holds.
+    private static final int DISK_READ_THREADS = 3;
+    private static final int NETWORK_THREADS = 3;
+
     private static final Object LOCK = new Object();
     private static AppExecutors sInstance;
-    private final Executor diskIO; // For database operations
+    private final Executor diskWrite; // Single writer for every database mutation
+    private final Executor diskRead;  // Database queries that never write
+    private final Executor networkIO; // Network calls and their callbacks
+    private final ExecutorService computation; // For CPU-bound work (parsing, hashing, verifying)
     private final Executor mainThread;
 
-    private AppExecutors(Executor diskIO, Executor mainThread) {
-        this.diskIO = diskIO;
+    private AppExecutors(Executor diskWrite, Executor diskRead, Executor networkIO,
+                         ExecutorService computation, Executor mainThread) {
+        this.diskWrite = diskWrite;
+        this.diskRead = diskRead;
+        this.networkIO = networkIO;
+        this.computation = computation;
         this.mainThread = mainThread;
     }
 
@@ -25,8 +39,12 @@ public class AppExecutors {
         if (sInstance == null) {
             synchronized (LOCK) {
                 if (sInstance == null) {
-                    // Use a single thread executor for sequential DB access
+                    // Writes stay sequential on one thread; reads no longer queue behind them
                     sInstance = new AppExecutors(Executors.newSingleThreadExecutor(),
+                            Executors.newFixedThreadPool(DISK_READ_THREADS),
+                            Executors.newFixedThreadPool(NETWORK_THREADS),
+                            // Work-stealing, so batches of small tasks spread evenly over the cores
+                            new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors())),
                             new MainThreadExecutor());
                 }
             }
@@ -34,9 +52,24 @@ public class AppExecutors {
         return sInstance;
     }
 
-    // Executor for background tasks (database, network)
-    public Executor diskIO() {
-        return diskIO;
+    // Executor for database inserts/updates/deletes; keeps writes ordered
+    public Executor diskWrite() {
+        return diskWrite;
+    }
+
+    // Executor for read-only database queries
+    public Executor diskRead() {
+        return diskRead;
+    }
+
+    // Executor for network requests and their callbacks
+    public Executor networkIO() {
+        return networkIO;
+    }
+
+    // Executor for CPU-bound work that must not hold up the database queue
+    public ExecutorService computation() {
+        return computation;
     }
 
     // Executor for posting results to the main thread
@@ -52,4 +85,4 @@ public class AppExecutors {
             mainThreadHandler.post(command);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.example.seqrpay;
+
+import android.content.Context;
+
+/**
+ * Login and registration as separate stages on the right executors.
+ *
+ * PBKDF2 takes a few hundred milliseconds by design. Running it inside a database task would hold
+ * up every query or write queued behind it, so only the users-table read (diskRead) and insert
+ * (diskWrite) run there. The hash derivation and the constant-time comparison run on computation(),
+ * and the result is posted to the main thread.
+ */
+public class Authenticator {
+
+    // Receives the outcome on the main thread
+    public interface ResultCallback {
+        /**
+         * @param result For login: the user id, or -1 for unknown user / wrong password.
+         *               For registration: the new user id, -2 if the username is taken, or -1 on error.
+         */
+        void onResult(long result);
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final AppExecutors executors;
+
+    public Authenticator(Context context) {
+        this(DatabaseHelper.getInstance(context), AppExecutors.getInstance());
+    }
+
+    Authenticator(DatabaseHelper dbHelper, AppExecutors executors) {
+        this.dbHelper = dbHelper;
+        this.executors = executors;
+    }
+
+    /**
+     * Reads the user's credentials on diskRead(), then checks the password on computation().
+     */
+    public void login(final String username, final String password, final ResultCallback callback) {
+        executors.diskRead().execute(new Runnable() {
+            @Override
+            public void run() {
+                final DatabaseHelper.Credentials credentials = dbHelper.getCredentials(username);
+                if (credentials == null) {
+                    post(callback, -1);
+                    return;
+                }
+                executors.computation().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean matches = SecurityUtils.verifyPassword(password, credentials.saltBase64,
+                                credentials.passwordHash, credentials.hashAlgorithm, credentials.hashIterations);
+                        if (matches) {
+                            dbHelper.rehashIfOutdated(credentials, password);
+                        }
+                        post(callback, matches ? credentials.userId : -1);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Hashes the password on computation(), then inserts the user on diskWrite().
+     */
+    public void register(final String username, final String password, final ResultCallback callback) {
+        executors.computation().execute(new Runnable() {
+            @Override
+            public void run() {
+                final byte[] salt = SecurityUtils.generateSalt();
+                final int iterations = SecurityUtils.getCalibratedPbkdf2Iterations();
+                final String hash = SecurityUtils.hashPassword(password, salt, SecurityUtils.PBKDF2_ALGORITHM, iterations);
+                if (hash == null) {
+                    post(callback, -1);
+                    return;
+                }
+                executors.diskWrite().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        post(callback, dbHelper.insertUser(username, salt, hash, SecurityUtils.PBKDF2_ALGORITHM, iterations));
+                    }
+                });
+            }
+        });
+    }
+
+    private void post(final ResultCallback callback, final long result) {
+        executors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.seqrpay;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Verifies many signed payment-request payloads at once, e.g. for end-of-day merchant
+ * reconciliation of scanned or received QR codes.
+ *
+ * Every payload is decoded ({@link PaymentRequestCodec}, or for older JSON payloads parsed and
+ * canonicalized with {@link PaymentPayloads#canonicalize(JSONObject)}) and verified as its own
+ * task on {@link AppExecutors#computation()}, a work-stealing pool sized to the core count, so
+ * one slow item does not hold up a fixed slice of the batch. Each payee's public key is looked up
+ * and decoded once per batch: the first item for a payee does the lookup and items for the same
+ * payee running at the same time wait for its result instead of repeating it.
+ * They wait as managed blockers, so the pool can start another worker instead of losing a core.
+ *
+ * verify() blocks until the whole batch is done; call it off the main thread, or use verifyAsync().
+ */
+public class BatchSignatureVerifier {
+
+    private static final String TAG = "BatchSignatureVerifier";
+
+    public enum Status {
+        VALID,          // Signature matches the payee's key
+        INVALID,        // Well-formed, but the signature does not match
+        MALFORMED,      // Not a signed payment request, missing fields, or an unknown signature encoding
+        KEY_NOT_FOUND   // No public key known for the payee
+    }
+
+    // Where payee keys come from; the app uses UserKeyPairManager
+    public interface KeyLookup {
+        PublicKey publicKeyFor(String payeeUsername);
+    }
+
+    // Receives the finished batch on the main thread
+    public interface Callback {
+        void onVerified(BatchResult result);
+    }
+
+    // Outcome of one payload
+    public static class ItemResult {
+        private final int index;
+        private final String payeeUsername;
+        private final Status status;
+        private final long nanos;
+
+        ItemResult(int index, String payeeUsername, Status status, long nanos) {
+            this.index = index;
+            this.payeeUsername = payeeUsername;
+            this.status = status;
+            this.nanos = nanos;
+        }
+
+        // Position of the payload in the input list
+        public int getIndex() {
+            return index;
+        }
+
+        // Payee from the signed block, or null if the payload was malformed
+        public String getPayeeUsername() {
+            return payeeUsername;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isValid() {
+            return status == Status.VALID;
+        }
+
+        // Time spent on this item, including waiting for its payee's key
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    // Per-item results in input order, plus totals for the batch
+    public static class BatchResult {
+        private final List<ItemResult> items;
+        private final long elapsedNanos;
+        private final int distinctPayees;
+        private final int[] statusCounts = new int[Status.values().length];
+        private long itemNanos;
+
+        BatchResult(List<ItemResult> items, long elapsedNanos, int distinctPayees) {
+            this.items = Collections.unmodifiableList(items);
+            this.elapsedNanos = elapsedNanos;
+            this.distinctPayees = distinctPayees;
+            for (ItemResult item : items) {
+                statusCounts[item.getStatus().ordinal()]++;
+                itemNanos += item.getNanos();
+            }
+        }
+
+        public List<ItemResult> getItems() {
+            return items;
+        }
+
+        public int size() {
+            return items.size();
+        }
+
+        public int count(Status status) {
+            return statusCounts[status.ordinal()];
+        }
+
+        public boolean allValid() {
+            return count(Status.VALID) == items.size();
+        }
+
+        // Wall-clock time of the whole batch
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        // Sum of per-item times; divided by getElapsedNanos() this is the achieved parallelism
+        public long getItemNanos() {
+            return itemNanos;
+        }
+
+        // Number of payee keys looked up, once each
+        public int getDistinctPayees() {
+            return distinctPayees;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final KeyLookup keyLookup;
+
+    public BatchSignatureVerifier(Context context) {
+        final Context appContext = context.getApplicationContext();
+        this.pool = AppExecutors.getInstance().computation();
+        this.keyLookup = new KeyLookup() {
+            @Override
+            public PublicKey publicKeyFor(String payeeUsername) {
+                return UserKeyPairManager.getPublicKeyForPayee(appContext, payeeUsername);
+            }
+        };
+    }
+
+    public BatchSignatureVerifier(ExecutorService pool, KeyLookup keyLookup) {
+        this.pool = pool;
+        this.keyLookup = keyLookup;
+    }
+
+    /**
+     * Verifies every payload and waits for all of them.
+     * @param payloads QR payload strings as produced by GenerateQrActivity: binary ({@link QrTransport}) or JSON.
+     * @return One result per payload in the same order, with batch totals.
+     *         Items that failed unexpectedly, or were not finished because the calling thread was
+     *         interrupted, are reported MALFORMED.
+     */
+    public BatchResult verify(List<String> payloads) {
+        long start = System.nanoTime();
+        final ConcurrentHashMap<String, FutureTask<PublicKey>> keys = new ConcurrentHashMap<>();
+        List<Callable<ItemResult>> tasks = new ArrayList<>(payloads.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            final int index = i;
+            final String payload = payloads.get(i);
+            tasks.add(new Callable<ItemResult>() {
+                @Override
+                public ItemResult call() {
+                    return verifyOne(index, payload, keys);
+                }
+            });
+        }
+
+        List<ItemResult> results = new ArrayList<>(payloads.size());
+        try {
+            List<Future<ItemResult>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // verifyOne catches everything it expects; anything else is a bug in that item only
+                    Log.e(TAG, "Unexpected error verifying item " + i, e.getCause());
+                    results.add(new ItemResult(i, null, Status.MALFORMED, 0));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Batch verification interrupted after " + results.size() + " items");
+        }
+        for (int i = results.size(); i < payloads.size(); i++) {
+            results.add(new ItemResult(i, null, Status.MALFORMED, 0));
+        }
+
+        BatchResult batch = new BatchResult(results, System.nanoTime() - start, keys.size());
+        Log.i(TAG, String.format("Verified %d payloads (%d valid, %d payees) in %.1f ms",
+                batch.size(), batch.count(Status.VALID), batch.getDistinctPayees(),
+                batch.getElapsedNanos() / 1e6));
+        return batch;
+    }
+
+    /**
+     * Runs {@link #verify(List)} in the background and posts the result to the main thread.
+     */
+    public void verifyAsync(final List<String> payloads, final Callback callback) {
+        final AppExecutors executors = AppExecutors.getInstance();
+        // The coordinating task joins its own subtasks; a work-stealing pool helps with them meanwhile
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BatchResult result = verify(payloads);
+                executors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onVerified(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private ItemResult verifyOne(int index, String payload,
+                                 ConcurrentHashMap<String, FutureTask<PublicKey>> keys) {
+        long start = System.nanoTime();
+        String payeeUsername = null;
+        Status status;
+        try {
+            if (payload == null) {
+                throw new JSONException("Null payload");
+            }
+            if (QrTransport.isBinaryPayload(payload)) {
+                return verifyBinary(index, payload, keys, start);
+            }
+            JSONObject qrJson = new JSONObject(payload);
+            if (!PaymentPayloads.isSignedPaymentRequest(qrJson)) {
+                status = Status.MALFORMED;
+            } else {
+                // Trust only the signed block, not the redundant display fields around it
+                JSONObject dataToSign = qrJson.getJSONObject(PaymentPayloads.FIELD_DATA_TO_SIGN);
+                String signatureBase64 = qrJson.getString(PaymentPayloads.FIELD_SIGNATURE);
+                String signatureAlgorithm = PaymentPayloads.signatureAlgorithmOf(qrJson);
+                payeeUsername = dataToSign.optString(PaymentPayloads.FIELD_PAYEE_USERNAME, null);
+                String canonical = PaymentPayloads.canonicalize(dataToSign);
+                if (payeeUsername == null || payeeUsername.isEmpty() || canonical == null
+                        || !SecurityUtils.isSupportedSignatureAlgorithm(signatureAlgorithm)) {
+                    status = Status.MALFORMED;
+                } else {
+                    PublicKey publicKey = publicKeyFor(payeeUsername, keys);
+                    if (publicKey == null) {
+                        status = Status.KEY_NOT_FOUND;
+                    } else if (SecurityUtils.verifySignature(canonical, signatureBase64, publicKey, signatureAlgorithm)) {
+                        status = Status.VALID;
+                    } else {
+                        status = Status.INVALID;
+                    }
+                }
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Malformed payload at index " + index + ": " + e.getMessage());
+            status = Status.MALFORMED;
+        }
+        return new ItemResult(index, payeeUsername, status, System.nanoTime() - start);
+    }
+
+    private ItemResult verifyBinary(int index, String payload,
+                                    ConcurrentHashMap<String, FutureTask<PublicKey>> keys, long start) {
+        PaymentRequestCodec.PaymentRequest request;
+        try {
+            request = PaymentRequestCodec.decode(QrTransport.decode(payload));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Malformed payload at index " + index + ": " + e.getMessage());
+            return new ItemResult(index, null, Status.MALFORMED, System.nanoTime() - start);
+        }
+        String payeeUsername = request.getPayeeUsername();
+        PublicKey publicKey = publicKeyFor(payeeUsername, keys);
+        Status status;
+        if (publicKey == null) {
+            status = Status.KEY_NOT_FOUND;
+        } else {
+            byte[] body = request.getSignedBody();
+            byte[] signature = request.getSignature();
+            status = SecurityUtils.verifySignature(body, 0, body.length, signature, 0, signature.length,
+                    publicKey, request.getSignatureAlgorithm()) ? Status.VALID : Status.INVALID;
+        }
+        return new ItemResult(index, payeeUsername, status, System.nanoTime() - start);
+    }
+
+    // The payee's key, looked up by whichever item of the batch asks first
+    private PublicKey publicKeyFor(final String payeeUsername,
+                                   ConcurrentHashMap<String, FutureTask<PublicKey>> keys) {
+        FutureTask<PublicKey> lookup = keys.get(payeeUsername);
+        if (lookup == null) {
+            FutureTask<PublicKey> created = new FutureTask<>(new Callable<PublicKey>() {
+                @Override
+                public PublicKey call() {
+                    return keyLookup.publicKeyFor(payeeUsername);
+                }
+            });
+            lookup = keys.putIfAbsent(payeeUsername, created);
+            if (lookup == null) {
+                lookup = created;
+                created.run();
+            }
+        }
+        try {
+            if (!lookup.isDone()) {
+                ForkJoinPool.managedBlock(new KeyWait(lookup)); // A plain wait outside a ForkJoinPool
+            }
+            return lookup.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error looking up public key for payee: " + payeeUsername, e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // Waits for another item's key lookup without pinning a worker of a ForkJoinPool
+    private static final class KeyWait implements ForkJoinPool.ManagedBlocker {
+        private final FutureTask<PublicKey> lookup;
+
+        KeyWait(FutureTask<PublicKey> lookup) {
+            this.lookup = lookup;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            try {
+                lookup.get();
+            } catch (ExecutionException e) {
+                // Done either way; publicKeyFor reports the failure
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return lookup.isDone();
+        }
+    }
+}
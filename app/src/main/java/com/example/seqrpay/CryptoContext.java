@@ -0,0 +1,104 @@
+package com.example.seqrpay;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+
+/**
+ * Per-thread JCA engines for {@link SecurityUtils}.
+ *
+ * getInstance() walks the provider list on every call, which is a measurable part of signing,
+ * verifying and encrypting small payloads. Engines are not thread-safe, so each thread keeps its
+ * own set, created on first use and re-initialised for every operation. One SecureRandom is
+ * shared by all threads; it is thread-safe and seeding it once is the expensive part.
+ *
+ * Signing and verifying use separate Signature objects: on Android, provider selection is delayed
+ * until init, so an instance first initialised with an AndroidKeyStore private key stays bound to
+ * that provider and cannot verify with an ordinary public key. If an instance rejects a key of
+ * another kind later on, it is replaced by a fresh one.
+ */
+public class CryptoContext {
+
+    static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final String EC_KEY_FACTORY_ALGORITHM = "EC";
+
+    private static final ThreadLocal<CryptoContext> CURRENT = new ThreadLocal<CryptoContext>() {
+        @Override
+        protected CryptoContext initialValue() {
+            return new CryptoContext();
+        }
+    };
+
+    private Signature signer;
+    private Signature verifier;
+    private KeyFactory ecKeyFactory;
+    private Cipher aesGcm;
+    private SecretKeyFactory pbkdf2;
+
+    private CryptoContext() {
+    }
+
+    // The calling thread's engines; never share the returned object with another thread
+    static CryptoContext get() {
+        return CURRENT.get();
+    }
+
+    // Signature initialised for signing with the given key
+    Signature signer(PrivateKey key) throws GeneralSecurityException {
+        if (signer == null) {
+            signer = Signature.getInstance(SecurityUtils.SIGNATURE_ALGORITHM);
+        }
+        try {
+            signer.initSign(key);
+        } catch (InvalidKeyException e) {
+            // Bound to a provider that does not take this kind of key
+            signer = Signature.getInstance(SecurityUtils.SIGNATURE_ALGORITHM);
+            signer.initSign(key);
+        }
+        return signer;
+    }
+
+    // Signature initialised for verifying with the given key
+    Signature verifier(PublicKey key) throws GeneralSecurityException {
+        if (verifier == null) {
+            verifier = Signature.getInstance(SecurityUtils.SIGNATURE_ALGORITHM);
+        }
+        try {
+            verifier.initVerify(key);
+        } catch (InvalidKeyException e) {
+            verifier = Signature.getInstance(SecurityUtils.SIGNATURE_ALGORITHM);
+            verifier.initVerify(key);
+        }
+        return verifier;
+    }
+
+    KeyFactory ecKeyFactory() throws GeneralSecurityException {
+        if (ecKeyFactory == null) {
+            ecKeyFactory = KeyFactory.getInstance(EC_KEY_FACTORY_ALGORITHM);
+        }
+        return ecKeyFactory;
+    }
+
+    // Uninitialised; callers always init with a fresh IV
+    Cipher aesGcm() throws GeneralSecurityException {
+        if (aesGcm == null) {
+            aesGcm = Cipher.getInstance(SecurityUtils.AES_ALGORITHM);
+        }
+        return aesGcm;
+    }
+
+    SecretKeyFactory pbkdf2() throws GeneralSecurityException {
+        if (pbkdf2 == null) {
+            pbkdf2 = SecretKeyFactory.getInstance(SecurityUtils.PBKDF2_ALGORITHM);
+        }
+        return pbkdf2;
+    }
+}
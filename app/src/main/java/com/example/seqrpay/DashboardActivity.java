@@ -5,7 +5,6 @@ import androidx.recyclerview.widget.LinearLayoutManager; // For RecyclerView
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.Intent;
-import android.content.SharedPreferences; // For getting logged-in user if needed for transactions
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -13,16 +12,21 @@ import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList; // For dummy transactions
-import java.util.List;     // For dummy transactions
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class DashboardActivity extends AppCompatActivity {
     private static final String TAG = "DashboardActivity";
+    private static final int RECENT_TRANSACTIONS_COUNT = 5;
+    private static final int SUMMARY_MONTHS = 3;
 
     // UI Elements
     private Button btnScan, btnTransfer, btnHistory;
     private Button btnGenerateQrReceivePayment;
     private TextView tvBalance;
+    private TextView tvMonthlySummary;
     private RecyclerView rvRecentTransactions;
     private TransactionAdapter transactionAdapter;
     private List<Transaction> recentTransactionsList;
@@ -30,7 +34,8 @@ public class DashboardActivity extends AppCompatActivity {
     // Database and Executors
     private DatabaseHelper dbHelper;
     private AppExecutors appExecutors;
-    private long currentUserId = -1; // To store the logged-in user's ID
+    private long currentUserId = -1;
+    private String currentUsername;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,24 +48,19 @@ public class DashboardActivity extends AppCompatActivity {
         btnHistory = findViewById(R.id.btn_history);
         btnGenerateQrReceivePayment = findViewById(R.id.btn_generate_qr_receive_payment);
         tvBalance = findViewById(R.id.tv_balance);
+        tvMonthlySummary = findViewById(R.id.tv_monthly_summary);
         rvRecentTransactions = findViewById(R.id.rv_recent_transactions);
 
         // Initialize Database and Executors
         dbHelper = DatabaseHelper.getInstance(this);
         appExecutors = AppExecutors.getInstance();
 
-        // Retrieve logged-in user's username and then ID
-        SharedPreferences prefs = getSharedPreferences(LoginActivity.SHARED_PREFS_NAME, MODE_PRIVATE);
-        String currentUsername = prefs.getString(LoginActivity.KEY_LOGGED_IN_USERNAME, null);
-
-        if (currentUsername != null) {
-            // You'll need a method in DatabaseHelper to get user ID by username
-            // For now, let's assume it exists or add a placeholder.
-            // currentUserId = dbHelper.getUserIdByUsername(currentUsername); // Example
+        // Logged-in user, resolved once at login
+        Session session = Session.get(this);
+        if (session != null) {
+            currentUserId = session.getUserId();
+            currentUsername = session.getUsername();
             Log.d(TAG, "Logged in as: " + currentUsername);
-            // For testing, if getUserIdByUsername is not implemented, you might hardcode for now
-            // or handle it. For simplicity, we'll proceed assuming you can get the ID.
-            // If not, transaction loading might not work correctly.
         } else {
             Log.e(TAG, "No logged-in username found. Dashboard features might be limited.");
             Toast.makeText(this, "Error: User session not found.", Toast.LENGTH_LONG).show();
@@ -80,6 +80,9 @@ public class DashboardActivity extends AppCompatActivity {
         // Load dashboard data (balance, recent transactions)
         loadDashboardData();
 
+        // Move history older than the archive horizon out of the live database (at most daily)
+        TransactionArchiveJob.scheduleIfDue(this);
+
         // Set Click Listeners for buttons
         btnScan.setOnClickListener(v ->
                 startActivity(new Intent(DashboardActivity.this, QRScannerActivity.class))
@@ -106,35 +109,56 @@ public class DashboardActivity extends AppCompatActivity {
     }
 
     private void loadDashboardData() {
-        // TODO: Implement actual logic to load balance from DatabaseHelper
-        // For now, using a placeholder.
-        tvBalance.setText("Balance: $1,234.56"); // Placeholder
-
-        // TODO: Implement logic to load recent transactions for currentUserId from DatabaseHelper
-        // This should run on a background thread.
-        // For now, using dummy data.
-        loadDummyRecentTransactions();
-    }
-
-    private void loadDummyRecentTransactions() {
-        // This is placeholder data. Replace with actual database query.
-        appExecutors.diskIO().execute(() -> {
-            // Simulate fetching a few recent transactions
-            // In a real app, query dbHelper.getTransactions(currentUserId, limit: 5, offset: 0) or similar
-            List<Transaction> dummyList = new ArrayList<>();
-            dummyList.add(new Transaction("Payment Received", "+$50.00", "2025-05-20"));
-            dummyList.add(new Transaction("Grocery Store", "-$25.50", "2025-05-19"));
-            dummyList.add(new Transaction("Transfer to Bob", "-$100.00", "2025-05-18"));
+        if (currentUserId < 0) {
+            return; // Session missing; already reported in onCreate
+        }
+        final long userId = currentUserId;
+        appExecutors.diskRead().execute(() -> {
+            // Balances are one short range scan of the user's rows; recent rows are the first keyset page
+            final Map<String, Long> balances = dbHelper.getBalances(userId);
+            final List<Transaction> recent = dbHelper.getTransactionsPage(userId,
+                    DatabaseHelper.FIRST_PAGE, DatabaseHelper.FIRST_PAGE, RECENT_TRANSACTIONS_COUNT);
+            final List<MonthlySummary> summaries = dbHelper.getMonthlySummaries(userId, SUMMARY_MONTHS);
 
             appExecutors.mainThread().execute(() -> {
+                showBalances(balances);
                 recentTransactionsList.clear();
-                recentTransactionsList.addAll(dummyList);
+                recentTransactionsList.addAll(recent);
                 transactionAdapter.notifyDataSetChanged();
-                if (recentTransactionsList.isEmpty()) {
-                    // Optionally show a "No recent transactions" message
-                }
+                showMonthlySummaries(summaries);
             });
         });
     }
-}
 
+    // One line per currency the user holds, e.g. "Balance: KZT 15000.00"
+    private void showBalances(Map<String, Long> balances) {
+        if (balances.isEmpty()) {
+            tvBalance.setText("Balance: no transactions yet"); // No currency to show a zero in
+            return;
+        }
+        StringBuilder text = new StringBuilder("Balance:");
+        String separator = balances.size() == 1 ? " " : "\n";
+        for (Map.Entry<String, Long> balance : balances.entrySet()) {
+            text.append(separator).append(MoneyUtils.formatBalance(balance.getValue(), balance.getKey()));
+        }
+        tvBalance.setText(text.toString());
+    }
+
+    // One line per month and currency, e.g. "2025-05: in $50.00 / out $125.50"
+    private void showMonthlySummaries(List<MonthlySummary> summaries) {
+        if (summaries.isEmpty()) {
+            tvMonthlySummary.setVisibility(View.GONE);
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (MonthlySummary summary : summaries) {
+            if (text.length() > 0) text.append('\n');
+            text.append(String.format(Locale.US, "%04d-%02d: in %s / out %s",
+                    summary.getYear(), summary.getMonth(),
+                    MoneyUtils.formatBalance(summary.getIncomeMinor(), summary.getCurrency()),
+                    MoneyUtils.formatBalance(summary.getOutgoingMinor(), summary.getCurrency())));
+        }
+        tvMonthlySummary.setText(text.toString());
+        tvMonthlySummary.setVisibility(View.VISIBLE);
+    }
+}
@@ -3,19 +3,32 @@ package com.example.seqrpay;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Log; // Added
 import android.util.Pair;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.util.ArrayList; // Needed for getTransactions
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;      // Needed for getTransactions
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "DatabaseHelper"; // Added
     private static final String DATABASE_NAME = "secure_payment.db";
-    private static final int DATABASE_VERSION = 2; // Assuming version 2 from previous security update
+    // Schema history lives in DatabaseMigrations; bump together with a new migration step
+    private static final int DATABASE_VERSION = 9;
 
     // --- Singleton Instance ---
     private static DatabaseHelper instance = null; // <<<=== ADDED
@@ -26,14 +39,69 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_USERNAME = "username";
     private static final String COLUMN_PASSWORD_HASH = "password_hash";
     private static final String COLUMN_SALT = "salt";
+    private static final String COLUMN_HASH_ALGORITHM = "hash_algorithm";   // PBKDF2 variant of password_hash
+    private static final String COLUMN_HASH_ITERATIONS = "hash_iterations"; // PBKDF2 cost of password_hash
 
     // --- ADD Transaction Table (Example) ---
     private static final String TABLE_TRANSACTIONS = "transactions";
     private static final String COLUMN_TX_ID = "tx_id";
     private static final String COLUMN_TX_USER_ID = "user_id"; // Foreign key to users table
     private static final String COLUMN_TX_DESCRIPTION = "description";
-    private static final String COLUMN_TX_AMOUNT = "amount"; // Store as String "+/-X.XX" or use REAL type
-    private static final String COLUMN_TX_DATE = "date";     // Store as TEXT (ISO8601) or INTEGER (Unix time)
+    private static final String COLUMN_TX_AMOUNT = "amount_minor"; // Signed INTEGER minor units (cents)
+    private static final String COLUMN_TX_CURRENCY = "currency";   // ISO 4217 code
+    private static final String COLUMN_TX_DATE = "date";           // INTEGER epoch millis
+
+    // Running balance per (user, currency), kept in step with transactions by addTransaction
+    private static final String TABLE_BALANCES = "balances";
+    private static final String COLUMN_BAL_USER_ID = "user_id";
+    private static final String COLUMN_BAL_CURRENCY = "currency";
+    private static final String COLUMN_BAL_AMOUNT = "balance_minor";
+    private static final String COLUMN_BAL_TX_COUNT = "tx_count";
+
+    // Income/outgoing totals per (user, month, direction, currency), kept in step by addTransaction
+    private static final String TABLE_ROLLUPS = "monthly_rollups";
+    private static final String COLUMN_RU_USER_ID = "user_id";
+    private static final String COLUMN_RU_YEAR_MONTH = "year_month"; // INTEGER yyyyMM, device local time
+    private static final String COLUMN_RU_DIRECTION = "direction";   // DIRECTION_INCOMING / DIRECTION_OUTGOING
+    private static final String COLUMN_RU_CURRENCY = "currency";
+    private static final String COLUMN_RU_TOTAL = "total_minor";     // Signed sum of amount_minor
+    private static final String COLUMN_RU_TX_COUNT = "tx_count";
+    private static final int DIRECTION_INCOMING = 0;
+    private static final int DIRECTION_OUTGOING = 1;
+
+    // SQL equivalents of yearMonthOf() and directionOf(), used when rebuilding from the ledger
+    private static final String SQL_YEAR_MONTH =
+            "CAST(strftime('%Y%m', " + COLUMN_TX_DATE + " / 1000, 'unixepoch', 'localtime') AS INTEGER)";
+    private static final String SQL_DIRECTION =
+            "CASE WHEN " + COLUMN_TX_AMOUNT + " < 0 THEN " + DIRECTION_OUTGOING + " ELSE " + DIRECTION_INCOMING + " END";
+
+    // Totals of the rows moved to the archive database, per rollup key. Updated in the same
+    // transaction that deletes the rows, so ledger = live rows + archived_totals at all times.
+    private static final String TABLE_ARCHIVED_TOTALS = "archived_totals";
+    private static final String COLUMN_AT_NEWEST_DATE = "newest_date"; // Latest archived date in the group
+
+    // Full-text index over transaction descriptions. External content: the text lives only in
+    // transactions, and triggers keep the index in step with every insert, update and delete.
+    private static final String TABLE_TRANSACTIONS_FTS = "transactions_fts";
+
+    // Rows per SQLite transaction for addTransactions
+    public static final int DEFAULT_INGEST_CHUNK_SIZE = 500;
+
+    // Keyset value meaning "start from the newest row" for getTransactionsPage
+    public static final long FIRST_PAGE = Long.MAX_VALUE;
+
+    // Rows moved per archive transaction pair (archive insert, live delete)
+    private static final int ARCHIVE_BATCH_SIZE = 500;
+    // newestArchivedDate() value for a user with nothing archived
+    private static final long NO_ARCHIVE = Long.MIN_VALUE;
+
+    // Newest rows kept in memory per user, and how many users' rows are kept
+    private static final int RECENT_CACHE_ROWS = 50;
+    private static final int RECENT_CACHE_USERS = 4;
+
+    private static final String[] TX_COLUMNS =
+            {COLUMN_TX_ID, COLUMN_TX_DESCRIPTION, COLUMN_TX_AMOUNT, COLUMN_TX_CURRENCY, COLUMN_TX_DATE};
+    private static final String TX_SELECT_LIST = TextUtils.join(", ", TX_COLUMNS);
 
     // Create table queries
     private static final String CREATE_TABLE_USERS =
@@ -41,20 +109,100 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
                     + COLUMN_USERNAME + " TEXT UNIQUE,"
                     + COLUMN_PASSWORD_HASH + " TEXT,"
-                    + COLUMN_SALT + " TEXT"
+                    + COLUMN_SALT + " TEXT,"
+                    + COLUMN_HASH_ALGORITHM + " TEXT NOT NULL DEFAULT '" + SecurityUtils.PBKDF2_ALGORITHM + "',"
+                    + COLUMN_HASH_ITERATIONS + " INTEGER NOT NULL DEFAULT " + SecurityUtils.LEGACY_PBKDF2_ITERATIONS
                     + ")";
 
     // <<<=== ADDED Transaction Table Creation ===>>>
     private static final String CREATE_TABLE_TRANSACTIONS =
             "CREATE TABLE " + TABLE_TRANSACTIONS + "("
                     + COLUMN_TX_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-                    + COLUMN_TX_USER_ID + " INTEGER,"
+                    + COLUMN_TX_USER_ID + " INTEGER NOT NULL,"
                     + COLUMN_TX_DESCRIPTION + " TEXT,"
-                    + COLUMN_TX_AMOUNT + " TEXT," // Or REAL
-                    + COLUMN_TX_DATE + " TEXT,"    // Or INTEGER
+                    + COLUMN_TX_AMOUNT + " INTEGER NOT NULL,"
+                    + COLUMN_TX_CURRENCY + " TEXT NOT NULL,"
+                    + COLUMN_TX_DATE + " INTEGER NOT NULL,"
                     + "FOREIGN KEY(" + COLUMN_TX_USER_ID + ") REFERENCES " + TABLE_USERS + "(" + COLUMN_ID + ")"
                     + ")";
 
+    private static final String CREATE_TABLE_BALANCES =
+            "CREATE TABLE " + TABLE_BALANCES + "("
+                    + COLUMN_BAL_USER_ID + " INTEGER NOT NULL,"
+                    + COLUMN_BAL_CURRENCY + " TEXT NOT NULL,"
+                    + COLUMN_BAL_AMOUNT + " INTEGER NOT NULL DEFAULT 0,"
+                    + COLUMN_BAL_TX_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                    + "PRIMARY KEY(" + COLUMN_BAL_USER_ID + ", " + COLUMN_BAL_CURRENCY + ")"
+                    + ") WITHOUT ROWID";
+
+    private static final String CREATE_TABLE_ROLLUPS =
+            "CREATE TABLE " + TABLE_ROLLUPS + "("
+                    + COLUMN_RU_USER_ID + " INTEGER NOT NULL,"
+                    + COLUMN_RU_YEAR_MONTH + " INTEGER NOT NULL,"
+                    + COLUMN_RU_DIRECTION + " INTEGER NOT NULL,"
+                    + COLUMN_RU_CURRENCY + " TEXT NOT NULL,"
+                    + COLUMN_RU_TOTAL + " INTEGER NOT NULL DEFAULT 0,"
+                    + COLUMN_RU_TX_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                    + "PRIMARY KEY(" + COLUMN_RU_USER_ID + ", " + COLUMN_RU_YEAR_MONTH + ", "
+                    + COLUMN_RU_DIRECTION + ", " + COLUMN_RU_CURRENCY + ")"
+                    + ") WITHOUT ROWID";
+
+    private static final String CREATE_TABLE_ARCHIVED_TOTALS =
+            "CREATE TABLE " + TABLE_ARCHIVED_TOTALS + "("
+                    + COLUMN_RU_USER_ID + " INTEGER NOT NULL,"
+                    + COLUMN_RU_YEAR_MONTH + " INTEGER NOT NULL,"
+                    + COLUMN_RU_DIRECTION + " INTEGER NOT NULL,"
+                    + COLUMN_RU_CURRENCY + " TEXT NOT NULL,"
+                    + COLUMN_RU_TOTAL + " INTEGER NOT NULL DEFAULT 0,"
+                    + COLUMN_RU_TX_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+                    + COLUMN_AT_NEWEST_DATE + " INTEGER NOT NULL DEFAULT 0,"
+                    + "PRIMARY KEY(" + COLUMN_RU_USER_ID + ", " + COLUMN_RU_YEAR_MONTH + ", "
+                    + COLUMN_RU_DIRECTION + ", " + COLUMN_RU_CURRENCY + ")"
+                    + ") WITHOUT ROWID";
+
+    // Per (user, currency) sums over the whole ledger: live rows plus archived totals
+    private static final String SQL_LEDGER_TOTALS =
+            "SELECT u, c, SUM(s) AS s, SUM(n) AS n FROM ("
+                    + "SELECT " + COLUMN_TX_USER_ID + " AS u, " + COLUMN_TX_CURRENCY + " AS c,"
+                    + " SUM(" + COLUMN_TX_AMOUNT + ") AS s, COUNT(*) AS n"
+                    + " FROM " + TABLE_TRANSACTIONS + " GROUP BY u, c"
+                    + " UNION ALL SELECT " + COLUMN_RU_USER_ID + ", " + COLUMN_RU_CURRENCY + ","
+                    + " SUM(" + COLUMN_RU_TOTAL + "), SUM(" + COLUMN_RU_TX_COUNT + ")"
+                    + " FROM " + TABLE_ARCHIVED_TOTALS + " GROUP BY " + COLUMN_RU_USER_ID + ", " + COLUMN_RU_CURRENCY
+                    + ") GROUP BY u, c";
+
+    private static final String CREATE_TABLE_TRANSACTIONS_FTS =
+            "CREATE VIRTUAL TABLE " + TABLE_TRANSACTIONS_FTS + " USING fts4("
+                    + "content=\"" + TABLE_TRANSACTIONS + "\", " + COLUMN_TX_DESCRIPTION + ")";
+
+    // BEFORE delete/update: an external-content index reads the old text from the content table
+    private static final String[] CREATE_TRIGGERS_TRANSACTIONS_FTS = {
+            "CREATE TRIGGER " + TABLE_TRANSACTIONS_FTS + "_ai AFTER INSERT ON " + TABLE_TRANSACTIONS + " BEGIN"
+                    + " INSERT INTO " + TABLE_TRANSACTIONS_FTS + "(docid, " + COLUMN_TX_DESCRIPTION + ")"
+                    + " VALUES (new." + COLUMN_TX_ID + ", new." + COLUMN_TX_DESCRIPTION + "); END",
+            "CREATE TRIGGER " + TABLE_TRANSACTIONS_FTS + "_bd BEFORE DELETE ON " + TABLE_TRANSACTIONS + " BEGIN"
+                    + " DELETE FROM " + TABLE_TRANSACTIONS_FTS + " WHERE docid = old." + COLUMN_TX_ID + "; END",
+            "CREATE TRIGGER " + TABLE_TRANSACTIONS_FTS + "_bu BEFORE UPDATE ON " + TABLE_TRANSACTIONS + " BEGIN"
+                    + " DELETE FROM " + TABLE_TRANSACTIONS_FTS + " WHERE docid = old." + COLUMN_TX_ID + "; END",
+            "CREATE TRIGGER " + TABLE_TRANSACTIONS_FTS + "_au AFTER UPDATE ON " + TABLE_TRANSACTIONS + " BEGIN"
+                    + " INSERT INTO " + TABLE_TRANSACTIONS_FTS + "(docid, " + COLUMN_TX_DESCRIPTION + ")"
+                    + " VALUES (new." + COLUMN_TX_ID + ", new." + COLUMN_TX_DESCRIPTION + "); END",
+    };
+
+    // Composite index matching the history sort order, so keyset pages are a single index range scan
+    private static final String INDEX_TX_USER_DATE = "idx_transactions_user_date";
+    private static final String CREATE_INDEX_TX_USER_DATE =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_TX_USER_DATE + " ON " + TABLE_TRANSACTIONS + "("
+                    + COLUMN_TX_USER_ID + ", "
+                    + COLUMN_TX_DATE + " DESC, "
+                    + COLUMN_TX_ID + " DESC"
+                    + ")";
+
+
+    private final TransactionArchive archive;
+    private final RecentTransactionsCache recentCache = new RecentTransactionsCache(RECENT_CACHE_USERS, RECENT_CACHE_ROWS);
+    // Newest archived date per user, so full live pages can skip the archive without a query
+    private final ConcurrentHashMap<Long, Long> newestArchivedDates = new ConcurrentHashMap<>();
 
     // --- Singleton getInstance method ---
     public static synchronized DatabaseHelper getInstance(Context context) { // <<<=== ADDED
@@ -67,7 +215,27 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     // Make constructor private for singleton <<<=== MODIFIED
     private DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    // Separate database file for instrumented tests and benchmarks, so they never touch user data
+    @VisibleForTesting
+    DatabaseHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        // WAL lets readers on AppExecutors.diskRead() run while the single writer commits
+        setWriteAheadLoggingEnabled(true);
+        archive = new TransactionArchive(context, archiveDatabaseName(databaseName));
+    }
+
+    // "secure_payment.db" -> "secure_payment_archive.db"
+    static String archiveDatabaseName(String databaseName) {
+        return databaseName.replaceFirst("\\.db$", "") + "_archive.db";
+    }
+
+    @Override
+    public synchronized void close() {
+        archive.close();
+        super.close();
     }
 
     @Override
@@ -75,45 +243,76 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         Log.i(TAG, "Creating database tables..."); // Added Log
         db.execSQL(CREATE_TABLE_USERS);
         db.execSQL(CREATE_TABLE_TRANSACTIONS); // <<<=== ADDED
+        db.execSQL(CREATE_INDEX_TX_USER_DATE);
+        db.execSQL(CREATE_TABLE_BALANCES);
+        db.execSQL(CREATE_TABLE_ROLLUPS);
+        db.execSQL(CREATE_TABLE_ARCHIVED_TOTALS);
+        db.execSQL(CREATE_TABLE_TRANSACTIONS_FTS);
+        for (String trigger : CREATE_TRIGGERS_TRANSACTIONS_FTS) {
+            db.execSQL(trigger);
+        }
         Log.i(TAG, "Database tables created."); // Added Log
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion); // Added Log
-        // Basic upgrade policy: drop and recreate. Implement proper migration for production.
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRANSACTIONS); // <<<=== ADDED
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
-        onCreate(db);
+        // Step-by-step, data-preserving upgrade (runs inside the helper's upgrade transaction)
+        DatabaseMigrations.migrate(db, oldVersion, newVersion);
     }
 
-    // Add a new user (remains synchronous, called from background thread)
-    public long addUser(String username, String password) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        long result = -1; // Default to failure
+    // What login needs from a users row: read on a DB executor, checked on the compute executor
+    public static class Credentials {
+        public final long userId;
+        public final String saltBase64;
+        public final String passwordHash;
+        public final String hashAlgorithm;
+        public final int hashIterations;
 
-        byte[] salt = SecurityUtils.generateSalt();
-        String hashedPassword = SecurityUtils.hashPassword(password, salt);
+        Credentials(long userId, String saltBase64, String passwordHash, String hashAlgorithm, int hashIterations) {
+            this.userId = userId;
+            this.saltBase64 = saltBase64;
+            this.passwordHash = passwordHash;
+            this.hashAlgorithm = hashAlgorithm;
+            this.hashIterations = hashIterations;
+        }
+    }
 
-        if (hashedPassword != null && salt != null) {
-            values.put(COLUMN_USERNAME, username);
-            values.put(COLUMN_PASSWORD_HASH, hashedPassword);
-            values.put(COLUMN_SALT, Base64.encodeToString(salt, Base64.NO_WRAP));
-            try {
-                result = db.insertOrThrow(TABLE_USERS, null, values); // Use insertOrThrow for better error info
-            } catch (android.database.sqlite.SQLiteConstraintException e) {
-                Log.w(TAG, "Constraint violation adding user (likely duplicate username): " + username);
-                result = -2; // Indicate duplicate username / constraint violation
-            } catch (Exception e) {
-                Log.e(TAG, "Error adding user: " + username, e);
-                result = -1; // General error
-            }
-        } else {
+    // Add a new user (remains synchronous, called from background thread).
+    // Hashes and inserts on the calling thread; Authenticator.register splits the two.
+    public long addUser(String username, String password) {
+        byte[] salt = SecurityUtils.generateSalt();
+        // Cost calibrated to this device, stored with the hash so it can change per user later
+        int iterations = SecurityUtils.getCalibratedPbkdf2Iterations();
+        String hashedPassword = SecurityUtils.hashPassword(password, salt, SecurityUtils.PBKDF2_ALGORITHM, iterations);
+        if (hashedPassword == null) {
             Log.e(TAG, "Failed to hash password for user: " + username);
+            return -1;
+        }
+        return insertUser(username, salt, hashedPassword, SecurityUtils.PBKDF2_ALGORITHM, iterations);
+    }
+
+    /**
+     * Inserts a user whose password is already hashed. Database work only; run on diskWrite().
+     * @return The new row id, -2 if the username is taken, or -1 on any other error.
+     */
+    public long insertUser(String username, byte[] salt, String passwordHash, String hashAlgorithm, int hashIterations) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_USERNAME, username);
+        values.put(COLUMN_PASSWORD_HASH, passwordHash);
+        values.put(COLUMN_SALT, Base64.encodeToString(salt, Base64.NO_WRAP));
+        values.put(COLUMN_HASH_ALGORITHM, hashAlgorithm);
+        values.put(COLUMN_HASH_ITERATIONS, hashIterations);
+        try {
+            return db.insertOrThrow(TABLE_USERS, null, values); // Use insertOrThrow for better error info
+        } catch (android.database.sqlite.SQLiteConstraintException e) {
+            Log.w(TAG, "Constraint violation adding user (likely duplicate username): " + username);
+            return -2; // Indicate duplicate username / constraint violation
+        } catch (Exception e) {
+            Log.e(TAG, "Error adding user: " + username, e);
+            return -1; // General error
         }
-        // db.close(); // Don't close if using singleton instance managed elsewhere
-        return result;
     }
 
     // Get salt and hash (remains synchronous)
@@ -154,82 +353,823 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return saltAndHash;
     }
 
+    // Resolve a username to its row id, or -1 if there is no such user
+    public long getUserIdByUsername(String username) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(TABLE_USERS, new String[]{COLUMN_ID}, COLUMN_USERNAME + " = ?",
+                    new String[]{username}, null, null, null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } catch (Exception e) {
+            Log.e(TAG, "Error resolving user id for: " + username, e);
+            return -1;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     // Check user (remains synchronous)
     public boolean checkUser(String username, String password) {
-        Pair<String, String> saltAndHash = getUserSaltAndHash(username);
+        return authenticate(username, password) >= 0;
+    }
 
-        if (saltAndHash == null || saltAndHash.first == null || saltAndHash.second == null) {
-            return false;
+    /**
+     * Checks a username/password pair and resolves the user id in the same users-table read.
+     * Reads and hashes on the calling thread; Authenticator.login runs the two on separate executors.
+     * A successful login whose hash parameters are outdated for this device is rehashed in the
+     * background; this call does not wait for it.
+     * @return The user's id, or -1 if the user does not exist or the password is wrong.
+     */
+    public long authenticate(String username, String password) {
+        Credentials credentials = getCredentials(username);
+        if (credentials == null || !SecurityUtils.verifyPassword(password, credentials.saltBase64,
+                credentials.passwordHash, credentials.hashAlgorithm, credentials.hashIterations)) {
+            return -1;
+        }
+        rehashIfOutdated(credentials, password);
+        return credentials.userId;
+    }
+
+    /**
+     * Reads a user's id, salt, hash and hash parameters. Database work only; run on diskRead().
+     * @return The credentials, or null if there is no such user or the read failed.
+     */
+    public Credentials getCredentials(String username) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(TABLE_USERS, new String[]{COLUMN_ID, COLUMN_SALT, COLUMN_PASSWORD_HASH,
+                            COLUMN_HASH_ALGORITHM, COLUMN_HASH_ITERATIONS},
+                    COLUMN_USERNAME + " = ?", new String[]{username}, null, null, null);
+            if (!cursor.moveToFirst() || cursor.isNull(1) || cursor.isNull(2)) {
+                return null;
+            }
+            return new Credentials(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                    cursor.getString(3), cursor.getInt(4));
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading credentials for user: " + username, e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
         }
-        String storedSaltStr = saltAndHash.first;
-        String storedHashStr = saltAndHash.second;
-        byte[] salt = Base64.decode(storedSaltStr, Base64.NO_WRAP);
-        String providedHashStr = SecurityUtils.hashPassword(password, salt);
+    }
 
-        return storedHashStr.equals(providedHashStr);
+    // Call after a successful login; queues a rehash if the stored parameters are outdated
+    void rehashIfOutdated(Credentials credentials, String password) {
+        if (SecurityUtils.needsRehash(credentials.hashAlgorithm, credentials.hashIterations)) {
+            rehashPasswordAsync(credentials.userId, password, credentials.passwordHash);
+        }
+    }
+
+    // Re-derives a just-verified password at this device's current cost, then swaps it in
+    private void rehashPasswordAsync(final long userId, final String password, final String oldHash) {
+        final AppExecutors executors = AppExecutors.getInstance();
+        executors.computation().execute(new Runnable() {
+            @Override
+            public void run() {
+                final byte[] salt = SecurityUtils.generateSalt();
+                final int iterations = SecurityUtils.getCalibratedPbkdf2Iterations();
+                final String hash = SecurityUtils.hashPassword(password, salt, SecurityUtils.PBKDF2_ALGORITHM, iterations);
+                if (hash == null) {
+                    return;
+                }
+                executors.diskWrite().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        updatePasswordHash(userId, oldHash, salt, hash, SecurityUtils.PBKDF2_ALGORITHM, iterations);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replaces a user's password hash and its parameters, only if the stored hash is still
+     * expectedOldHash (so a password changed in the meantime is never overwritten).
+     * @return true if the row was updated.
+     */
+    boolean updatePasswordHash(long userId, String expectedOldHash, byte[] salt, String hash,
+                               String algorithm, int iterations) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SALT, Base64.encodeToString(salt, Base64.NO_WRAP));
+        values.put(COLUMN_PASSWORD_HASH, hash);
+        values.put(COLUMN_HASH_ALGORITHM, algorithm);
+        values.put(COLUMN_HASH_ITERATIONS, iterations);
+        try {
+            int updated = getWritableDatabase().update(TABLE_USERS, values,
+                    COLUMN_ID + " = ? AND " + COLUMN_PASSWORD_HASH + " = ?",
+                    new String[]{String.valueOf(userId), expectedOldHash});
+            if (updated == 1) {
+                Log.i(TAG, "Rehashed password of user " + userId + " at " + iterations + " iterations");
+            }
+            return updated == 1;
+        } catch (Exception e) {
+            Log.e(TAG, "Error rehashing password of user " + userId, e);
+            return false;
+        }
     }
 
     // --- Example: Add Transaction Method (synchronous) ---
     // This needs user ID - you'd fetch this after login and pass it around or store in session
-    public boolean addTransaction(long userId, String description, String amount, String date) {
+    public boolean addTransaction(long userId, String description, long amountMinor, String currency, long timestampMillis) {
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TX_USER_ID, userId);
-        values.put(COLUMN_TX_DESCRIPTION, description);
-        values.put(COLUMN_TX_AMOUNT, amount);
-        values.put(COLUMN_TX_DATE, date); // Use a consistent date format (e.g., ISO8601 YYYY-MM-DD HH:MM:SS)
-
+        LedgerWriter writer = new LedgerWriter(db);
         long result = -1;
+        // The ledger row and the balance move together or not at all
+        db.beginTransaction();
         try {
-            result = db.insertOrThrow(TABLE_TRANSACTIONS, null, values);
+            result = writer.write(userId, description, amountMinor, currency, timestampMillis);
+            db.setTransactionSuccessful();
         } catch (Exception e) {
             Log.e(TAG, "Error adding transaction for user " + userId, e);
+            result = -1;
+        } finally {
+            db.endTransaction();
+            writer.close();
         }
         // db.close();
+        if (result != -1) {
+            recentCache.onInsert(userId, new Transaction(result, description, amountMinor, currency, timestampMillis));
+        }
         return result != -1;
     }
 
-    // --- Example: Get Transactions Method (synchronous) ---
-    // Again, needs user ID
-    public List<Transaction> getTransactions(long userId) {
-        List<Transaction> transactions = new ArrayList<>();
+    /**
+     * Bulk variant of addTransaction for imports and syncs, using DEFAULT_INGEST_CHUNK_SIZE.
+     * @see #addTransactions(long, Iterable, int)
+     */
+    public int addTransactions(long userId, Iterable<Transaction> transactions) {
+        return addTransactions(userId, transactions, DEFAULT_INGEST_CHUNK_SIZE);
+    }
+
+    /**
+     * Inserts many transactions for one user, reusing compiled statements and committing
+     * every chunkSize rows, so a large import pays one commit per chunk instead of one per row.
+     * Balances and monthly rollups are updated in the same transactions as the rows they come from.
+     *
+     * If a chunk fails it is rolled back and the import stops; earlier chunks stay committed.
+     * The iterable may block (e.g. while a parser produces rows) and is consumed exactly once.
+     *
+     * @param userId Owner of every row; the txId of each Transaction is ignored.
+     * @param transactions Rows to insert.
+     * @param chunkSize Rows per SQLite transaction (at least 1).
+     * @return Number of rows committed.
+     */
+    public int addTransactions(long userId, Iterable<Transaction> transactions, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        SQLiteDatabase db = this.getWritableDatabase();
+        LedgerWriter writer = new LedgerWriter(db);
+        Iterator<Transaction> iterator = transactions.iterator();
+        int committed = 0;
+        try {
+            while (iterator.hasNext()) {
+                int inChunk = 0;
+                db.beginTransaction();
+                try {
+                    while (inChunk < chunkSize && iterator.hasNext()) {
+                        Transaction tx = iterator.next();
+                        writer.write(userId, tx.getDescription(), tx.getAmountMinor(), tx.getCurrency(), tx.getTimestamp());
+                        inChunk++;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                committed += inChunk;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Bulk insert for user " + userId + " stopped after " + committed + " rows", e);
+        } finally {
+            writer.close();
+            recentCache.invalidate(userId); // Cheaper to reload one page than to merge a whole import
+        }
+        return committed;
+    }
+
+    // Compiled statements for appending to the ledger; must be used on the thread that created it
+    private static final class LedgerWriter {
+        private final SQLiteStatement insertTransaction;
+        private final SQLiteStatement ensureBalanceRow;
+        private final SQLiteStatement addToBalance;
+        private final SQLiteStatement ensureRollupRow;
+        private final SQLiteStatement addToRollup;
+        private final Calendar calendar = Calendar.getInstance();
+
+        LedgerWriter(SQLiteDatabase db) {
+            insertTransaction = db.compileStatement("INSERT INTO " + TABLE_TRANSACTIONS + "("
+                    + COLUMN_TX_USER_ID + ", " + COLUMN_TX_DESCRIPTION + ", " + COLUMN_TX_AMOUNT + ", "
+                    + COLUMN_TX_CURRENCY + ", " + COLUMN_TX_DATE + ") VALUES (?, ?, ?, ?, ?)");
+            // Upsert without ON CONFLICT, which needs a newer SQLite than minSdk ships
+            ensureBalanceRow = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_BALANCES + "("
+                    + COLUMN_BAL_USER_ID + ", " + COLUMN_BAL_CURRENCY + ") VALUES (?, ?)");
+            addToBalance = db.compileStatement("UPDATE " + TABLE_BALANCES + " SET "
+                    + COLUMN_BAL_AMOUNT + " = " + COLUMN_BAL_AMOUNT + " + ?, "
+                    + COLUMN_BAL_TX_COUNT + " = " + COLUMN_BAL_TX_COUNT + " + 1"
+                    + " WHERE " + COLUMN_BAL_USER_ID + " = ? AND " + COLUMN_BAL_CURRENCY + " = ?");
+            ensureRollupRow = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_ROLLUPS + "("
+                    + COLUMN_RU_USER_ID + ", " + COLUMN_RU_YEAR_MONTH + ", " + COLUMN_RU_DIRECTION + ", "
+                    + COLUMN_RU_CURRENCY + ") VALUES (?, ?, ?, ?)");
+            addToRollup = db.compileStatement("UPDATE " + TABLE_ROLLUPS + " SET "
+                    + COLUMN_RU_TOTAL + " = " + COLUMN_RU_TOTAL + " + ?, "
+                    + COLUMN_RU_TX_COUNT + " = " + COLUMN_RU_TX_COUNT + " + 1"
+                    + " WHERE " + COLUMN_RU_USER_ID + " = ? AND " + COLUMN_RU_YEAR_MONTH + " = ?"
+                    + " AND " + COLUMN_RU_DIRECTION + " = ? AND " + COLUMN_RU_CURRENCY + " = ?");
+        }
+
+        // Appends one row and its balance delta; the caller owns the surrounding transaction
+        long write(long userId, String description, long amountMinor, String currency, long timestampMillis) {
+            insertTransaction.bindLong(1, userId);
+            if (description == null) {
+                insertTransaction.bindNull(2);
+            } else {
+                insertTransaction.bindString(2, description);
+            }
+            insertTransaction.bindLong(3, amountMinor);
+            insertTransaction.bindString(4, currency);
+            insertTransaction.bindLong(5, timestampMillis);
+            long txId = insertTransaction.executeInsert();
+
+            ensureBalanceRow.bindLong(1, userId);
+            ensureBalanceRow.bindString(2, currency);
+            ensureBalanceRow.executeInsert();
+
+            addToBalance.bindLong(1, amountMinor);
+            addToBalance.bindLong(2, userId);
+            addToBalance.bindString(3, currency);
+            addToBalance.executeUpdateDelete();
+
+            int yearMonth = yearMonthOf(calendar, timestampMillis);
+            int direction = directionOf(amountMinor);
+            ensureRollupRow.bindLong(1, userId);
+            ensureRollupRow.bindLong(2, yearMonth);
+            ensureRollupRow.bindLong(3, direction);
+            ensureRollupRow.bindString(4, currency);
+            ensureRollupRow.executeInsert();
+
+            addToRollup.bindLong(1, amountMinor);
+            addToRollup.bindLong(2, userId);
+            addToRollup.bindLong(3, yearMonth);
+            addToRollup.bindLong(4, direction);
+            addToRollup.bindString(5, currency);
+            addToRollup.executeUpdateDelete();
+            return txId;
+        }
+
+        void close() {
+            insertTransaction.close();
+            ensureBalanceRow.close();
+            addToBalance.close();
+            ensureRollupRow.close();
+            addToRollup.close();
+        }
+    }
+
+    // yyyyMM of a timestamp in device local time; must agree with SQL_YEAR_MONTH
+    private static int yearMonthOf(Calendar calendar, long timestampMillis) {
+        calendar.setTimeInMillis(timestampMillis);
+        return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+    }
+
+    private static int directionOf(long amountMinor) {
+        return amountMinor < 0 ? DIRECTION_OUTGOING : DIRECTION_INCOMING;
+    }
+
+    /**
+     * Current balance of a user in one currency, read with a single primary-key lookup.
+     * @return Balance in minor units; 0 if the user has no transactions in that currency.
+     */
+    public long getBalance(long userId, String currency) {
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = null;
-        String[] columns = {COLUMN_TX_DESCRIPTION, COLUMN_TX_AMOUNT, COLUMN_TX_DATE};
-        String selection = COLUMN_TX_USER_ID + " = ?";
-        String[] selectionArgs = {String.valueOf(userId)};
-        String orderBy = COLUMN_TX_DATE + " DESC"; // Order by date descending
+        try {
+            cursor = db.query(TABLE_BALANCES, new String[]{COLUMN_BAL_AMOUNT},
+                    COLUMN_BAL_USER_ID + " = ? AND " + COLUMN_BAL_CURRENCY + " = ?",
+                    new String[]{String.valueOf(userId), currency}, null, null, null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading balance for user " + userId, e);
+            return 0L;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
 
+    /**
+     * Current balances of a user in every currency they have transactions in.
+     * @return Balance in minor units per currency code, ordered by currency; empty if none or on error.
+     */
+    public Map<String, Long> getBalances(long userId) {
+        Map<String, Long> balances = new LinkedHashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
         try {
-            cursor = db.query(TABLE_TRANSACTIONS, columns, selection, selectionArgs, null, null, orderBy);
-            if (cursor != null && cursor.moveToFirst()) {
-                int descIndex = cursor.getColumnIndex(COLUMN_TX_DESCRIPTION);
-                int amountIndex = cursor.getColumnIndex(COLUMN_TX_AMOUNT);
-                int dateIndex = cursor.getColumnIndex(COLUMN_TX_DATE);
+            cursor = db.query(TABLE_BALANCES, new String[]{COLUMN_BAL_CURRENCY, COLUMN_BAL_AMOUNT},
+                    COLUMN_BAL_USER_ID + " = ?", new String[]{String.valueOf(userId)},
+                    null, null, COLUMN_BAL_CURRENCY);
+            while (cursor.moveToNext()) {
+                balances.put(cursor.getString(0), cursor.getLong(1));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading balances for user " + userId, e);
+            balances.clear();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Drops every cached first page; call on logout or when a different user logs in.
+     */
+    public void clearRecentTransactionsCache() {
+        recentCache.invalidateAll();
+    }
+
+    /**
+     * The first-page cache, for reading its hit/miss counters.
+     */
+    public RecentTransactionsCache getRecentTransactionsCache() {
+        return recentCache;
+    }
 
-                if (descIndex == -1 || amountIndex == -1 || dateIndex == -1) {
-                    Log.e(TAG, "Transaction column index error.");
-                    return transactions; // Return empty list
+    /**
+     * Number of transactions a user has (live and archived), from the balance counters.
+     */
+    public long getTransactionCount(long userId) {
+        try {
+            return DatabaseUtils.longForQuery(this.getReadableDatabase(),
+                    "SELECT IFNULL(SUM(" + COLUMN_BAL_TX_COUNT + "), 0) FROM " + TABLE_BALANCES
+                            + " WHERE " + COLUMN_BAL_USER_ID + " = ?", new String[]{String.valueOf(userId)});
+        } catch (Exception e) {
+            Log.e(TAG, "Error counting transactions for user " + userId, e);
+            return 0L;
+        }
+    }
+
+    /**
+     * Recomputes the ledger totals (live rows plus archived totals) and compares them with the balances table.
+     * This scans every transaction, so run it from a maintenance path, never per screen.
+     * @return true if every balance row matches the ledger.
+     */
+    public boolean verifyBalances() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        // Ledger groups whose stored balance is missing or different...
+        String ledgerVsStored = "SELECT COUNT(*) FROM (" + SQL_LEDGER_TOTALS + ") l"
+                + " LEFT JOIN " + TABLE_BALANCES + " b ON b." + COLUMN_BAL_USER_ID + " = l.u"
+                + " AND b." + COLUMN_BAL_CURRENCY + " = l.c"
+                + " WHERE b." + COLUMN_BAL_AMOUNT + " IS NULL OR b." + COLUMN_BAL_AMOUNT + " != l.s"
+                + " OR b." + COLUMN_BAL_TX_COUNT + " != l.n";
+        // ...plus stored balances that no longer have any ledger rows behind them
+        String orphaned = "SELECT COUNT(*) FROM " + TABLE_BALANCES + " b"
+                + " WHERE b." + COLUMN_BAL_TX_COUNT + " != 0 AND NOT EXISTS (SELECT 1 FROM " + TABLE_TRANSACTIONS + " t"
+                + " WHERE t." + COLUMN_TX_USER_ID + " = b." + COLUMN_BAL_USER_ID
+                + " AND t." + COLUMN_TX_CURRENCY + " = b." + COLUMN_BAL_CURRENCY + ")"
+                + " AND NOT EXISTS (SELECT 1 FROM " + TABLE_ARCHIVED_TOTALS + " a"
+                + " WHERE a." + COLUMN_RU_USER_ID + " = b." + COLUMN_BAL_USER_ID
+                + " AND a." + COLUMN_RU_CURRENCY + " = b." + COLUMN_BAL_CURRENCY + ")";
+        long mismatches = DatabaseUtils.longForQuery(db, ledgerVsStored, null)
+                + DatabaseUtils.longForQuery(db, orphaned, null);
+        if (mismatches > 0) {
+            Log.w(TAG, "Balance verification found " + mismatches + " mismatched rows");
+        }
+        return mismatches == 0;
+    }
+
+    /**
+     * Rebuilds the balances table from the ledger (live rows plus archived totals) in one transaction.
+     */
+    public void rebuildBalances() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_BALANCES);
+            db.execSQL("INSERT INTO " + TABLE_BALANCES + "("
+                    + COLUMN_BAL_USER_ID + ", " + COLUMN_BAL_CURRENCY + ", "
+                    + COLUMN_BAL_AMOUNT + ", " + COLUMN_BAL_TX_COUNT + ")"
+                    + " SELECT u, c, s, n FROM (" + SQL_LEDGER_TOTALS + ")");
+            db.setTransactionSuccessful();
+            Log.i(TAG, "Balances rebuilt from ledger");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Income and spending per month for the last {@code months} calendar months (including the
+     * current one), newest first. Answered from the rollup table with one primary-key range scan;
+     * raw transactions are never read. Months without activity are omitted.
+     */
+    public List<MonthlySummary> getMonthlySummaries(long userId, int months) {
+        List<MonthlySummary> summaries = new ArrayList<>();
+        if (months < 1) return summaries;
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.MONTH, -(months - 1));
+        int fromYearMonth = calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(TABLE_ROLLUPS,
+                    new String[]{COLUMN_RU_YEAR_MONTH, COLUMN_RU_DIRECTION, COLUMN_RU_CURRENCY, COLUMN_RU_TOTAL, COLUMN_RU_TX_COUNT},
+                    COLUMN_RU_USER_ID + " = ? AND " + COLUMN_RU_YEAR_MONTH + " >= ?",
+                    new String[]{String.valueOf(userId), String.valueOf(fromYearMonth)},
+                    null, null, COLUMN_RU_YEAR_MONTH + " DESC, " + COLUMN_RU_CURRENCY);
+            MonthlySummary current = null;
+            while (cursor.moveToNext()) {
+                int yearMonth = cursor.getInt(0);
+                String currency = cursor.getString(2);
+                if (current == null || current.getYearMonth() != yearMonth || !current.getCurrency().equals(currency)) {
+                    current = new MonthlySummary(yearMonth, currency);
+                    summaries.add(current);
+                }
+                if (cursor.getInt(1) == DIRECTION_OUTGOING) {
+                    current.addOutgoing(cursor.getLong(3), cursor.getInt(4));
+                } else {
+                    current.addIncome(cursor.getLong(3), cursor.getInt(4));
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading monthly summaries for user " + userId, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Rebuilds the monthly rollup table from the ledger (live rows plus archived totals)
+     * in one transaction (repair path).
+     */
+    public void rebuildMonthlyRollups() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_ROLLUPS);
+            db.execSQL("INSERT INTO " + TABLE_ROLLUPS + "("
+                    + COLUMN_RU_USER_ID + ", " + COLUMN_RU_YEAR_MONTH + ", " + COLUMN_RU_DIRECTION + ", "
+                    + COLUMN_RU_CURRENCY + ", " + COLUMN_RU_TOTAL + ", " + COLUMN_RU_TX_COUNT + ")"
+                    + " SELECT u, ym, dir, c, SUM(s), SUM(n) FROM ("
+                    + "SELECT " + COLUMN_TX_USER_ID + " AS u, " + SQL_YEAR_MONTH + " AS ym, " + SQL_DIRECTION + " AS dir, "
+                    + COLUMN_TX_CURRENCY + " AS c, SUM(" + COLUMN_TX_AMOUNT + ") AS s, COUNT(*) AS n"
+                    + " FROM " + TABLE_TRANSACTIONS + " GROUP BY u, ym, dir, c"
+                    + " UNION ALL SELECT " + COLUMN_RU_USER_ID + ", " + COLUMN_RU_YEAR_MONTH + ", " + COLUMN_RU_DIRECTION + ", "
+                    + COLUMN_RU_CURRENCY + ", " + COLUMN_RU_TOTAL + ", " + COLUMN_RU_TX_COUNT + " FROM " + TABLE_ARCHIVED_TOTALS
+                    + ") GROUP BY u, ym, dir, c");
+            db.setTransactionSuccessful();
+            Log.i(TAG, "Monthly rollups rebuilt from ledger");
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Moves transactions dated before cutoffMillis into the archive database, oldest first, and
+     * stops after about maxRows rows so a long backlog does not hold the write executor.
+     * Run it on AppExecutors.diskWrite(); TransactionArchiveJob schedules it.
+     *
+     * Each batch is committed to the archive first, then deleted from the live table in one
+     * transaction that also adds it to archived_totals. If the process dies in between, the rows
+     * exist in both files: history reads drop the duplicate and the next run completes the move.
+     * Balances and monthly rollups are running totals and are not touched.
+     *
+     * @param cutoffMillis Rows strictly older than this are archived.
+     * @param maxRows Soft limit on rows moved by this call.
+     * @return Number of rows moved; less than maxRows once nothing older than the cutoff is left.
+     */
+    public int archiveTransactionsOlderThan(long cutoffMillis, int maxRows) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_TRANSACTIONS
+                + " WHERE " + COLUMN_TX_ID + " = ?");
+        SQLiteStatement ensureTotalsRow = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_ARCHIVED_TOTALS + "("
+                + COLUMN_RU_USER_ID + ", " + COLUMN_RU_YEAR_MONTH + ", " + COLUMN_RU_DIRECTION + ", "
+                + COLUMN_RU_CURRENCY + ") VALUES (?, ?, ?, ?)");
+        SQLiteStatement addToTotals = db.compileStatement("UPDATE " + TABLE_ARCHIVED_TOTALS + " SET "
+                + COLUMN_RU_TOTAL + " = " + COLUMN_RU_TOTAL + " + ?, "
+                + COLUMN_RU_TX_COUNT + " = " + COLUMN_RU_TX_COUNT + " + 1, "
+                + COLUMN_AT_NEWEST_DATE + " = max(" + COLUMN_AT_NEWEST_DATE + ", ?)"
+                + " WHERE " + COLUMN_RU_USER_ID + " = ? AND " + COLUMN_RU_YEAR_MONTH + " = ?"
+                + " AND " + COLUMN_RU_DIRECTION + " = ? AND " + COLUMN_RU_CURRENCY + " = ?");
+        String oldestSql = "SELECT " + TX_SELECT_LIST + " FROM " + TABLE_TRANSACTIONS
+                + " WHERE " + COLUMN_TX_USER_ID + " = ? AND " + COLUMN_TX_DATE + " < ?"
+                + " ORDER BY " + COLUMN_TX_DATE + " ASC, " + COLUMN_TX_ID + " ASC LIMIT ?";
+        Calendar calendar = Calendar.getInstance();
+        int moved = 0;
+        try {
+            // Every ledger row has a balance row, so this lists every user with transactions
+            List<Long> userIds = new ArrayList<>();
+            Cursor cursor = db.rawQuery("SELECT DISTINCT " + COLUMN_BAL_USER_ID + " FROM " + TABLE_BALANCES, null);
+            try {
+                while (cursor.moveToNext()) {
+                    userIds.add(cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            for (long userId : userIds) {
+                while (moved < maxRows) {
+                    int batchSize = Math.min(ARCHIVE_BATCH_SIZE, maxRows - moved);
+                    List<Transaction> batch = queryPage(userId, oldestSql, new String[]{String.valueOf(userId),
+                            String.valueOf(cutoffMillis), String.valueOf(batchSize)}, false);
+                    if (batch.isEmpty() || !archive.append(userId, batch)) {
+                        break;
+                    }
+                    db.beginTransaction();
+                    try {
+                        for (Transaction tx : batch) {
+                            delete.bindLong(1, tx.getTxId());
+                            delete.executeUpdateDelete();
+
+                            int yearMonth = yearMonthOf(calendar, tx.getTimestamp());
+                            int direction = directionOf(tx.getAmountMinor());
+                            ensureTotalsRow.bindLong(1, userId);
+                            ensureTotalsRow.bindLong(2, yearMonth);
+                            ensureTotalsRow.bindLong(3, direction);
+                            ensureTotalsRow.bindString(4, tx.getCurrency());
+                            ensureTotalsRow.executeInsert();
+
+                            addToTotals.bindLong(1, tx.getAmountMinor());
+                            addToTotals.bindLong(2, tx.getTimestamp());
+                            addToTotals.bindLong(3, userId);
+                            addToTotals.bindLong(4, yearMonth);
+                            addToTotals.bindLong(5, direction);
+                            addToTotals.bindString(6, tx.getCurrency());
+                            addToTotals.executeUpdateDelete();
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    moved += batch.size();
+                    recentCache.invalidate(userId);
+                    // Overwrites whatever a concurrent reader cached before this commit
+                    newestArchivedDates.put(userId, queryNewestArchivedDate(db, userId));
+                    if (batch.size() < batchSize) {
+                        break;
+                    }
                 }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Archiving stopped after " + moved + " rows", e);
+        } finally {
+            delete.close();
+            ensureTotalsRow.close();
+            addToTotals.close();
+        }
+        if (moved > 0) {
+            Log.i(TAG, "Archived " + moved + " transactions older than " + cutoffMillis);
+        }
+        return moved;
+    }
+
+    // Newest archived date of a user, or NO_ARCHIVE; cached because every history page asks
+    private long newestArchivedDate(long userId) {
+        Long cached = newestArchivedDates.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long newest = NO_ARCHIVE;
+        try {
+            newest = queryNewestArchivedDate(this.getReadableDatabase(), userId);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading archive state for user " + userId, e);
+            return newest; // Not cached, so the next page retries
+        }
+        // putIfAbsent: a value stored by the archive job is never replaced by an older read
+        Long raced = newestArchivedDates.putIfAbsent(userId, newest);
+        return raced != null ? raced : newest;
+    }
+
+    private static long queryNewestArchivedDate(SQLiteDatabase db, long userId) {
+        Cursor cursor = db.rawQuery("SELECT MAX(" + COLUMN_AT_NEWEST_DATE + ") FROM " + TABLE_ARCHIVED_TOTALS
+                + " WHERE " + COLUMN_RU_USER_ID + " = ?", new String[]{String.valueOf(userId)});
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : NO_ARCHIVE;
+        } finally {
+            cursor.close();
+        }
+    }
 
-                do {
-                    String description = cursor.getString(descIndex);
-                    String amount = cursor.getString(amountIndex);
-                    String date = cursor.getString(dateIndex);
-                    transactions.add(new Transaction(description, amount, date));
-                } while (cursor.moveToNext());
+    // Merges two newest-first lists; a row present in both (interrupted archive run) is kept once
+    private static List<Transaction> mergeNewestFirst(List<Transaction> a, List<Transaction> b) {
+        List<Transaction> merged = new ArrayList<>(a.size() + b.size());
+        int i = 0, j = 0;
+        while (i < a.size() && j < b.size()) {
+            Transaction x = a.get(i), y = b.get(j);
+            if (x.getTimestamp() == y.getTimestamp() && x.getTxId() == y.getTxId()) {
+                merged.add(x);
+                i++;
+                j++;
+            } else if (x.getTimestamp() > y.getTimestamp()
+                    || (x.getTimestamp() == y.getTimestamp() && x.getTxId() > y.getTxId())) {
+                merged.add(x);
+                i++;
+            } else {
+                merged.add(y);
+                j++;
             }
+        }
+        merged.addAll(a.subList(i, a.size()));
+        merged.addAll(b.subList(j, b.size()));
+        return merged;
+    }
+
+    // --- Example: Get Transactions Method (synchronous) ---
+    // Loads the whole history (including archived rows) in one list; prefer getTransactionsPage
+    // for anything user-facing.
+    public List<Transaction> getTransactions(long userId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        String selection = COLUMN_TX_USER_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(userId)};
+        String orderBy = COLUMN_TX_DATE + " DESC, " + COLUMN_TX_ID + " DESC"; // Order by date descending
+
+        try {
+            cursor = db.query(TABLE_TRANSACTIONS, TX_COLUMNS, selection, selectionArgs, null, null, orderBy);
+            List<Transaction> live = readTransactions(cursor, false);
+            return newestArchivedDate(userId) == NO_ARCHIVE ? live : mergeNewestFirst(live, archive.getAll(userId));
         } catch (Exception e) {
             Log.e(TAG, "Error fetching transactions for user " + userId, e);
+            return new ArrayList<>();
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
             // db.close();
         }
-        return transactions;
     }
 
-    // --- Add methods for getting/setting balance if needed ---
+    /**
+     * Returns one page of a user's history, newest first, strictly older than the given key.
+     * Uses keyset pagination over (date, tx_id) so every page is a bounded index range scan,
+     * no matter how deep into the history the caller is. Archived rows are merged in
+     * transparently, but the archive is only read once the page reaches back to its dates.
+     * The first page (FIRST_PAGE keys) is served from an in-memory cache when possible.
+     *
+     * @param userId The owner of the transactions.
+     * @param beforeDate Timestamp of the last row of the previous page, or FIRST_PAGE.
+     * @param beforeTxId tx_id of the last row of the previous page, or FIRST_PAGE.
+     * @param limit Maximum number of rows to return.
+     * @return The page (possibly empty). Never null.
+     */
+    public List<Transaction> getTransactionsPage(long userId, long beforeDate, long beforeTxId, int limit) {
+        if (beforeDate != FIRST_PAGE || beforeTxId != FIRST_PAGE) {
+            return queryTransactionsPage(userId, beforeDate, beforeTxId, limit);
+        }
+        List<Transaction> cached = recentCache.get(userId, limit);
+        if (cached != null) {
+            return cached;
+        }
+        // Read a full cache entry even for a short request, so the next first page is a hit
+        long readVersion = recentCache.version();
+        int fetch = Math.max(limit, recentCache.getRowsPerUser());
+        List<Transaction> page = queryTransactionsPage(userId, beforeDate, beforeTxId, fetch);
+        recentCache.put(userId, page, readVersion);
+        return page.size() > limit ? new ArrayList<>(page.subList(0, limit)) : page;
+    }
+
+    private List<Transaction> queryTransactionsPage(long userId, long beforeDate, long beforeTxId, int limit) {
+        String sql = "SELECT " + TX_SELECT_LIST + " FROM " + TABLE_TRANSACTIONS
+                + " WHERE " + COLUMN_TX_USER_ID + " = ?"
+                + " AND (" + COLUMN_TX_DATE + " < ? OR (" + COLUMN_TX_DATE + " = ? AND " + COLUMN_TX_ID + " < ?))"
+                + " ORDER BY " + COLUMN_TX_DATE + " DESC, " + COLUMN_TX_ID + " DESC LIMIT ?";
+        String[] args = {String.valueOf(userId), String.valueOf(beforeDate), String.valueOf(beforeDate),
+                String.valueOf(beforeTxId), String.valueOf(limit)};
+        List<Transaction> page = queryPage(userId, sql, args, false);
+        long archivedNewest = newestArchivedDate(userId);
+        if (archivedNewest == NO_ARCHIVE
+                || (page.size() == limit && page.get(limit - 1).getTimestamp() > archivedNewest)) {
+            return page; // Still inside the live window
+        }
+        List<Transaction> merged = mergeNewestFirst(page, archive.getPage(userId, beforeDate, beforeTxId, limit));
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    /**
+     * Returns one page of a user's history strictly newer than the given key, newest first.
+     * Used to reload rows the history list dropped from its head while scrolling down.
+     *
+     * @param userId The owner of the transactions.
+     * @param afterDate Timestamp of the first (newest) row currently loaded.
+     * @param afterTxId tx_id of the first (newest) row currently loaded.
+     * @param limit Maximum number of rows to return; these are the rows closest to the key.
+     * @return The page (possibly empty). Never null.
+     */
+    public List<Transaction> getTransactionsPageAfter(long userId, long afterDate, long afterTxId, int limit) {
+        String sql = "SELECT " + TX_SELECT_LIST + " FROM " + TABLE_TRANSACTIONS
+                + " WHERE " + COLUMN_TX_USER_ID + " = ?"
+                + " AND (" + COLUMN_TX_DATE + " > ? OR (" + COLUMN_TX_DATE + " = ? AND " + COLUMN_TX_ID + " > ?))"
+                + " ORDER BY " + COLUMN_TX_DATE + " ASC, " + COLUMN_TX_ID + " ASC LIMIT ?";
+        String[] args = {String.valueOf(userId), String.valueOf(afterDate), String.valueOf(afterDate),
+                String.valueOf(afterTxId), String.valueOf(limit)};
+        // Scanned oldest-first to get the rows adjacent to the key, then flipped back to display order
+        List<Transaction> page = queryPage(userId, sql, args, true);
+        long archivedNewest = newestArchivedDate(userId);
+        if (archivedNewest == NO_ARCHIVE || archivedNewest < afterDate) {
+            return page; // Nothing archived at or after the key
+        }
+        List<Transaction> merged = mergeNewestFirst(page, archive.getPageAfter(userId, afterDate, afterTxId, limit));
+        // Keep the rows closest to the key, i.e. the oldest ones at the end
+        return merged.size() > limit ? new ArrayList<>(merged.subList(merged.size() - limit, merged.size())) : merged;
+    }
+
+    /**
+     * Full-text search over a user's transaction descriptions.
+     * Every word in the query must match (as a prefix, so "groc" finds "Grocery Store").
+     * Results are ranked newest first: FTS4 on older Android releases has no relevance
+     * function, and for payment history the most recent match is usually the one wanted.
+     * Only live rows are indexed; archived transactions are not searched.
+     *
+     * @param userId The owner of the transactions.
+     * @param query Free text typed by the user; punctuation and FTS operators are ignored.
+     * @param limit Maximum number of results.
+     * @return Matching transactions (possibly empty). Never null.
+     */
+    public List<Transaction> searchTransactions(long userId, String query, int limit) {
+        String match = toFtsPrefixQuery(query);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT t." + COLUMN_TX_ID + ", t." + COLUMN_TX_DESCRIPTION + ", t." + COLUMN_TX_AMOUNT
+                + ", t." + COLUMN_TX_CURRENCY + ", t." + COLUMN_TX_DATE
+                + " FROM " + TABLE_TRANSACTIONS_FTS
+                + " JOIN " + TABLE_TRANSACTIONS + " t ON t." + COLUMN_TX_ID + " = " + TABLE_TRANSACTIONS_FTS + ".docid"
+                + " WHERE " + TABLE_TRANSACTIONS_FTS + " MATCH ? AND t." + COLUMN_TX_USER_ID + " = ?"
+                + " ORDER BY t." + COLUMN_TX_DATE + " DESC, t." + COLUMN_TX_ID + " DESC LIMIT ?";
+        return queryPage(userId, sql, new String[]{match, String.valueOf(userId), String.valueOf(limit)}, false);
+    }
+
+    // "Grocery march" -> "grocery* march*"; null if the text has no searchable words
+    private static String toFtsPrefixQuery(String query) {
+        if (query == null) return null;
+        StringBuilder match = new StringBuilder();
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(word).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    private List<Transaction> queryPage(long userId, String sql, String[] args, boolean reverse) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args);
+            return readTransactions(cursor, reverse);
+        } catch (Exception e) {
+            Log.e(TAG, "Error fetching transaction page for user " + userId, e);
+            return new ArrayList<>();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    // Shared with TransactionArchive, whose table uses the same column names
+    static List<Transaction> readTransactions(Cursor cursor, boolean reverse) {
+        List<Transaction> transactions = new ArrayList<>();
+        if (cursor == null || !cursor.moveToFirst()) {
+            return transactions;
+        }
+        int idIndex = cursor.getColumnIndex(COLUMN_TX_ID);
+        int descIndex = cursor.getColumnIndex(COLUMN_TX_DESCRIPTION);
+        int amountIndex = cursor.getColumnIndex(COLUMN_TX_AMOUNT);
+        int currencyIndex = cursor.getColumnIndex(COLUMN_TX_CURRENCY);
+        int dateIndex = cursor.getColumnIndex(COLUMN_TX_DATE);
+
+        if (idIndex == -1 || descIndex == -1 || amountIndex == -1 || currencyIndex == -1 || dateIndex == -1) {
+            Log.e(TAG, "Transaction column index error.");
+            return transactions; // Return empty list
+        }
+
+        do {
+            transactions.add(new Transaction(
+                    cursor.getLong(idIndex),
+                    cursor.getString(descIndex),
+                    cursor.getLong(amountIndex),
+                    cursor.getString(currencyIndex),
+                    cursor.getLong(dateIndex)));
+        } while (cursor.moveToNext());
+
+        if (reverse) {
+            Collections.reverse(transactions);
+        }
+        return transactions;
+    }
 
 }
\ No newline at end of file
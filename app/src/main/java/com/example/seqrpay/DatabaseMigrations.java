@@ -0,0 +1,304 @@
+package com.example.seqrpay;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Versioned schema migrations for {@link DatabaseHelper}.
+ *
+ * Each migration upgrades the schema by exactly one version and must keep every existing row.
+ * SQLiteOpenHelper runs onUpgrade inside a single transaction, so a failing step rolls the
+ * whole upgrade back and leaves the database at its old version instead of half-migrated.
+ *
+ * The SQL in here is frozen on purpose: a migration describes the schema as it was at that
+ * version, so it must not reference DatabaseHelper's (current) table definitions.
+ */
+public class DatabaseMigrations {
+
+    private static final String TAG = "DatabaseMigrations";
+
+    // Oldest schema whose layout is known; anything older is set aside rather than converted
+    private static final int FIRST_KNOWN_VERSION = 2;
+
+    public abstract static class Migration {
+        final int toVersion;
+
+        Migration(int toVersion) {
+            this.toVersion = toVersion;
+        }
+
+        // Upgrades the schema from (toVersion - 1) to toVersion
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    // Ordered by toVersion; add new steps at the end and bump DatabaseHelper.DATABASE_VERSION
+    private static final Migration[] MIGRATIONS = {
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // Pre-v2 layouts were never documented. Keep whatever is there under a
+                    // legacy name so it can be recovered by hand, and start the v2 schema fresh.
+                    renameIfExists(db, "transactions", "transactions_legacy_v1");
+                    renameIfExists(db, "users", "users_legacy_v1");
+                    db.execSQL("CREATE TABLE users("
+                            + "id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                            + "username TEXT UNIQUE,"
+                            + "password_hash TEXT,"
+                            + "salt TEXT)");
+                    db.execSQL("CREATE TABLE transactions("
+                            + "tx_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                            + "user_id INTEGER,"
+                            + "description TEXT,"
+                            + "amount TEXT,"
+                            + "date TEXT,"
+                            + "FOREIGN KEY(user_id) REFERENCES users(id))");
+                }
+            },
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("CREATE INDEX IF NOT EXISTS idx_transactions_user_date"
+                            + " ON transactions(user_id, date DESC, tx_id DESC)");
+                }
+            },
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    convertAmountsAndDates(db);
+                }
+            },
+            new Migration(5) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // Running balance per (user, currency), seeded from the existing ledger
+                    db.execSQL("CREATE TABLE balances("
+                            + "user_id INTEGER NOT NULL,"
+                            + "currency TEXT NOT NULL,"
+                            + "balance_minor INTEGER NOT NULL DEFAULT 0,"
+                            + "tx_count INTEGER NOT NULL DEFAULT 0,"
+                            + "PRIMARY KEY(user_id, currency)) WITHOUT ROWID");
+                    db.execSQL("INSERT INTO balances(user_id, currency, balance_minor, tx_count)"
+                            + " SELECT user_id, currency, SUM(amount_minor), COUNT(*)"
+                            + " FROM transactions GROUP BY user_id, currency");
+                }
+            },
+            new Migration(6) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // External-content FTS4 index over descriptions, populated from existing rows
+                    db.execSQL("CREATE VIRTUAL TABLE transactions_fts USING fts4(content=\"transactions\", description)");
+                    db.execSQL("CREATE TRIGGER transactions_fts_ai AFTER INSERT ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(docid, description) VALUES (new.tx_id, new.description); END");
+                    db.execSQL("CREATE TRIGGER transactions_fts_bd BEFORE DELETE ON transactions BEGIN"
+                            + " DELETE FROM transactions_fts WHERE docid = old.tx_id; END");
+                    db.execSQL("CREATE TRIGGER transactions_fts_bu BEFORE UPDATE ON transactions BEGIN"
+                            + " DELETE FROM transactions_fts WHERE docid = old.tx_id; END");
+                    db.execSQL("CREATE TRIGGER transactions_fts_au AFTER UPDATE ON transactions BEGIN"
+                            + " INSERT INTO transactions_fts(docid, description) VALUES (new.tx_id, new.description); END");
+                    db.execSQL("INSERT INTO transactions_fts(transactions_fts) VALUES ('rebuild')");
+                }
+            },
+            new Migration(7) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // Per-month income/outgoing totals, seeded from the existing ledger
+                    db.execSQL("CREATE TABLE monthly_rollups("
+                            + "user_id INTEGER NOT NULL,"
+                            + "year_month INTEGER NOT NULL,"
+                            + "direction INTEGER NOT NULL,"
+                            + "currency TEXT NOT NULL,"
+                            + "total_minor INTEGER NOT NULL DEFAULT 0,"
+                            + "tx_count INTEGER NOT NULL DEFAULT 0,"
+                            + "PRIMARY KEY(user_id, year_month, direction, currency)) WITHOUT ROWID");
+                    db.execSQL("INSERT INTO monthly_rollups(user_id, year_month, direction, currency, total_minor, tx_count)"
+                            + " SELECT user_id,"
+                            + " CAST(strftime('%Y%m', date / 1000, 'unixepoch', 'localtime') AS INTEGER) AS ym,"
+                            + " CASE WHEN amount_minor < 0 THEN 1 ELSE 0 END AS dir,"
+                            + " currency, SUM(amount_minor), COUNT(*)"
+                            + " FROM transactions GROUP BY user_id, ym, dir, currency");
+                }
+            },
+            new Migration(8) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // Totals of rows moved to the archive database; nothing is archived yet
+                    db.execSQL("CREATE TABLE archived_totals("
+                            + "user_id INTEGER NOT NULL,"
+                            + "year_month INTEGER NOT NULL,"
+                            + "direction INTEGER NOT NULL,"
+                            + "currency TEXT NOT NULL,"
+                            + "total_minor INTEGER NOT NULL DEFAULT 0,"
+                            + "tx_count INTEGER NOT NULL DEFAULT 0,"
+                            + "newest_date INTEGER NOT NULL DEFAULT 0,"
+                            + "PRIMARY KEY(user_id, year_month, direction, currency)) WITHOUT ROWID");
+                }
+            },
+            new Migration(9) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    // Per-user password hash parameters; every existing hash used the fixed v8 cost
+                    db.execSQL("ALTER TABLE users ADD COLUMN hash_algorithm TEXT NOT NULL"
+                            + " DEFAULT 'PBKDF2WithHmacSHA256'");
+                    db.execSQL("ALTER TABLE users ADD COLUMN hash_iterations INTEGER NOT NULL DEFAULT 10000");
+                }
+            },
+    };
+
+    /**
+     * Runs every migration between oldVersion (exclusive) and newVersion (inclusive), in order.
+     */
+    public static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < FIRST_KNOWN_VERSION - 1) {
+            oldVersion = FIRST_KNOWN_VERSION - 1; // Treat any undocumented schema like v1
+        }
+        for (Migration migration : MIGRATIONS) {
+            if (migration.toVersion <= oldVersion || migration.toVersion > newVersion) {
+                continue;
+            }
+            Log.i(TAG, "Migrating database to version " + migration.toVersion);
+            migration.migrate(db);
+        }
+    }
+
+    private static void renameIfExists(SQLiteDatabase db, String table, String newName) {
+        Cursor cursor = db.rawQuery(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{table});
+        try {
+            if (!cursor.moveToFirst()) return;
+        } finally {
+            cursor.close();
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + newName);
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + newName);
+        Log.w(TAG, "Preserved undocumented table " + table + " as " + newName);
+    }
+
+    // --- v3 -> v4: TEXT amounts/dates become INTEGER minor units, ISO currency and epoch millis ---
+
+    private static void convertAmountsAndDates(SQLiteDatabase db) {
+        // SQLite cannot change a column's type in place, so copy into a new table and swap it in
+        db.execSQL("CREATE TABLE transactions_v4("
+                + "tx_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + "user_id INTEGER NOT NULL,"
+                + "description TEXT,"
+                + "amount_minor INTEGER NOT NULL,"
+                + "currency TEXT NOT NULL,"
+                + "date INTEGER NOT NULL,"
+                + "FOREIGN KEY(user_id) REFERENCES users(id))");
+
+        SQLiteStatement insert = db.compileStatement("INSERT INTO transactions_v4"
+                + "(tx_id, user_id, description, amount_minor, currency, date) VALUES (?, ?, ?, ?, ?, ?)");
+        int converted = 0;
+        int unparsed = 0;
+        Cursor cursor = db.rawQuery("SELECT tx_id, user_id, description, amount, date FROM transactions", null);
+        try {
+            while (cursor.moveToNext()) {
+                String currency = legacyCurrency(cursor.getString(3));
+                Long amountMinor = legacyAmountMinor(cursor.getString(3), currency);
+                Long dateMillis = legacyDateMillis(cursor.getString(4));
+                if (amountMinor == null || dateMillis == null) {
+                    // Keep the row; a zero amount or epoch date is visible and fixable, a lost row is not
+                    Log.w(TAG, "Could not fully parse legacy transaction " + cursor.getLong(0)
+                            + " (amount='" + cursor.getString(3) + "', date='" + cursor.getString(4) + "')");
+                    unparsed++;
+                }
+                insert.clearBindings();
+                insert.bindLong(1, cursor.getLong(0));
+                insert.bindLong(2, cursor.getLong(1));
+                if (cursor.isNull(2)) {
+                    insert.bindNull(3);
+                } else {
+                    insert.bindString(3, cursor.getString(2));
+                }
+                insert.bindLong(4, amountMinor != null ? amountMinor : 0L);
+                insert.bindString(5, currency);
+                insert.bindLong(6, dateMillis != null ? dateMillis : 0L);
+                insert.executeInsert();
+                converted++;
+            }
+        } finally {
+            cursor.close();
+            insert.close();
+        }
+
+        db.execSQL("DROP INDEX IF EXISTS idx_transactions_user_date");
+        db.execSQL("DROP TABLE transactions");
+        db.execSQL("ALTER TABLE transactions_v4 RENAME TO transactions");
+        db.execSQL("CREATE INDEX idx_transactions_user_date ON transactions(user_id, date DESC, tx_id DESC)");
+        Log.i(TAG, "Converted " + converted + " transactions to integer amounts/dates (" + unparsed + " with defaults)");
+    }
+
+    // Legacy amounts look like "+$50.00", "-25.50", "USD 10" or "1,234.56 EUR"
+    static String legacyCurrency(String amount) {
+        if (amount == null) return MoneyUtils.DEFAULT_CURRENCY;
+        if (amount.contains("$")) return "USD";
+        if (amount.contains("€")) return "EUR";
+        if (amount.contains("£")) return "GBP";
+        if (amount.contains("₸")) return "KZT";
+        if (amount.contains("₽")) return "RUB";
+        String letters = amount.replaceAll("[^A-Za-z]", "");
+        if (letters.length() == 3) return letters.toUpperCase(Locale.US);
+        return MoneyUtils.DEFAULT_CURRENCY;
+    }
+
+    // Commas are only understood as thousands separators in front of a decimal point, "1,234.56".
+    // "1.234,56", "12,50" or "1,234" could be read either way, so those are left unparsed (kept as zero).
+    private static final String GROUPED_DECIMAL = "-?[0-9]{1,3}(,[0-9]{3})+\\.[0-9]*";
+
+    static Long legacyAmountMinor(String amount, String currency) {
+        if (amount == null) return null;
+        String numeric = amount.replaceAll("[^0-9.,\\-]", "");
+        if (numeric.indexOf(',') >= 0) {
+            if (!numeric.matches(GROUPED_DECIMAL)) return null;
+            numeric = numeric.replace(",", "");
+        }
+        if (numeric.isEmpty()) return null;
+        try {
+            BigDecimal value = new BigDecimal(numeric);
+            int digits = MoneyUtils.fractionDigits(currency);
+            // Legacy text could carry extra decimals; round half-up rather than reject the row
+            return value.setScale(digits, RoundingMode.HALF_UP).movePointRight(digits).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private static final String[] LEGACY_DATE_PATTERNS = {
+            "yyyy-MM-dd'T'HH:mm:ss'Z'", // ISO-8601 date and time in UTC
+            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", // The same with milliseconds, as StatementExporter writes
+            "yyyy-MM-dd HH:mm:ss",
+            "yyyy-MM-dd HH:mm",
+            "yyyy-MM-dd",
+    };
+
+    static Long legacyDateMillis(String date) {
+        if (date == null) return null;
+        String trimmed = date.trim();
+        if (trimmed.matches("\\d{9,13}")) {
+            long value = Long.parseLong(trimmed);
+            return trimmed.length() <= 10 ? value * 1000L : value; // Seconds or millis
+        }
+        for (String pattern : LEGACY_DATE_PATTERNS) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setLenient(false);
+            if (pattern.endsWith("'Z'")) {
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            }
+            try {
+                return format.parse(trimmed).getTime();
+            } catch (ParseException ignored) {
+                // Try the next pattern
+            }
+        }
+        return null;
+    }
+}
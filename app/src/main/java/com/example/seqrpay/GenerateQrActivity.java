@@ -3,10 +3,15 @@ package com.example.seqrpay;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 
-import android.content.SharedPreferences;
+import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -15,21 +20,12 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.material.textfield.TextInputEditText;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.security.PrivateKey;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
-import java.util.TreeMap; // For canonical string
-import java.util.Map; // For canonical string
+import java.security.PublicKey;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class GenerateQrActivity extends AppCompatActivity {
 
@@ -39,9 +35,27 @@ public class GenerateQrActivity extends AppCompatActivity {
     private TextInputEditText etAmount, etCurrency;
     private Button btnGenerateQr;
     private ImageView ivQrCode;
+    private Drawable qrPlaceholderBackground;
 
     private String currentLoggedInUsername;
 
+    // Matches iv_qr_code in the layout, for renders before it is laid out
+    private static final int QR_SIZE_DP = 280;
+    // Pause in typing before the preview is regenerated
+    private static final long PREVIEW_DEBOUNCE_MS = 300;
+
+    private final QrRenderer qrRenderer = new QrRenderer(); // Guarded by itself; used off the main thread
+    private final AppExecutors appExecutors = AppExecutors.getInstance();
+    private SignedQrCache signedQrCache;
+    private final Handler previewHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingPreview;
+    private Future<?> keyPairSetup;
+    private Future<?> qrTask;
+    // Bumped on the main thread whenever the inputs change; results of older generations are dropped
+    private volatile int qrGeneration = 0;
+    // The QR bitmap on screen, so the renderer never draws into it
+    private volatile Bitmap shownQr;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -54,10 +68,11 @@ public class GenerateQrActivity extends AppCompatActivity {
         btnGenerateQr = findViewById(R.id.btn_generate_qr);
         ivQrCode = findViewById(R.id.iv_qr_code);
         tvQrPayloadDebug = findViewById(R.id.tv_qr_payload_debug);
+        qrPlaceholderBackground = ivQrCode.getBackground();
 
         // Retrieve the logged-in username
-        SharedPreferences prefs = getSharedPreferences(LoginActivity.SHARED_PREFS_NAME, MODE_PRIVATE);
-        currentLoggedInUsername = prefs.getString(LoginActivity.KEY_LOGGED_IN_USERNAME, null);
+        Session session = Session.get(this);
+        currentLoggedInUsername = session != null ? session.getUsername() : null;
 
         if (currentLoggedInUsername == null || currentLoggedInUsername.isEmpty()) {
             Toast.makeText(this, "Error: Not logged in.", Toast.LENGTH_LONG).show();
@@ -68,208 +83,230 @@ public class GenerateQrActivity extends AppCompatActivity {
 
         tvPayeeUsername.setText(currentLoggedInUsername);
 
-        // Ensure key pair exists for the current user. This might take a moment if generating.
-        // Consider running this in a background thread if it causes UI lag on first run.
-        // For simplicity here, it's on the main thread.
-        UserKeyPairManager.ensureKeyPairExists(this, currentLoggedInUsername);
+        // Ensure key pair exists for the current user. Generating one can take a while, so it
+        // runs in the background; QR jobs wait for it before signing.
+        final Context appContext = getApplicationContext();
+        signedQrCache = SignedQrCache.getInstance(appContext); // Loads from disk on first use, in a QR job
+        final String username = currentLoggedInUsername;
+        keyPairSetup = appExecutors.computation().submit(
+                () -> UserKeyPairManager.ensureKeyPairExists(appContext, username));
+
+        // Live preview: every edit invalidates the code on screen, and a new one is generated
+        // once typing pauses
+        TextWatcher previewWatcher = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                schedulePreview();
+            }
+        };
+        etAmount.addTextChangedListener(previewWatcher);
+        etCurrency.addTextChangedListener(previewWatcher);
+
+        btnGenerateQr.setOnClickListener(v -> {
+            cancelPendingPreview();
+            generateSignedQrCode(true);
+        });
+    }
 
-        btnGenerateQr.setOnClickListener(v -> generateSignedQrCode());
+    @Override
+    protected void onDestroy() {
+        previewHandler.removeCallbacksAndMessages(null);
+        qrGeneration++;
+        if (qrTask != null) {
+            qrTask.cancel(false);
+        }
+        super.onDestroy();
+    }
+
+    private void schedulePreview() {
+        invalidateQr();
+        cancelPendingPreview();
+        pendingPreview = () -> generateSignedQrCode(false);
+        previewHandler.postDelayed(pendingPreview, PREVIEW_DEBOUNCE_MS);
     }
 
-    private void generateSignedQrCode() {
+    private void cancelPendingPreview() {
+        if (pendingPreview != null) {
+            previewHandler.removeCallbacks(pendingPreview);
+            pendingPreview = null;
+        }
+    }
+
+    // Drops the code on screen and any job still working on one: it no longer matches the inputs
+    private void invalidateQr() {
+        qrGeneration++;
+        if (qrTask != null) {
+            qrTask.cancel(false); // Unstarted jobs never run; a running one sees the new generation
+            qrTask = null;
+        }
+        shownQr = null;
+        ivQrCode.setImageDrawable(null); // Also clears an error icon from an earlier attempt
+        ivQrCode.setBackground(qrPlaceholderBackground);
+        tvQrPayloadDebug.setVisibility(View.GONE);
+    }
+
+    /**
+     * Validates the inputs on the main thread and starts a background job that signs and renders
+     * the QR code. Superseded jobs are cancelled or have their result dropped.
+     * @param showErrors Whether to flag invalid fields and cache the signed payload; off for the live
+     *     preview while typing, whose intermediate amounts would only evict the codes worth reusing.
+     */
+    private void generateSignedQrCode(boolean showErrors) {
         String amountStr = etAmount.getText().toString().trim();
         String currencyStr = etCurrency.getText().toString().trim().toUpperCase();
 
         if (amountStr.isEmpty()) {
-            etAmount.setError("Amount cannot be empty");
-            etAmount.requestFocus();
+            if (showErrors) {
+                etAmount.setError("Amount cannot be empty");
+                etAmount.requestFocus();
+            }
             return;
         }
         if (currencyStr.isEmpty() || currencyStr.length() != 3) {
-            etCurrency.setError("Enter a valid 3-letter currency code");
-            etCurrency.requestFocus();
+            if (showErrors) {
+                etCurrency.setError("Enter a valid 3-letter currency code");
+                etCurrency.requestFocus();
+            }
             return;
         }
+        long amountMinor;
         try {
-            double amountDouble = Double.parseDouble(amountStr);
-            if (amountDouble <= 0) {
-                etAmount.setError("Amount must be positive");
+            amountMinor = MoneyUtils.parseMinorUnits(amountStr, currencyStr);
+            if (amountMinor <= 0) {
+                if (showErrors) {
+                    etAmount.setError("Amount must be positive");
+                }
                 return;
             }
-        } catch (NumberFormatException e) {
-            etAmount.setError("Invalid amount format");
+        } catch (NumberFormatException | ArithmeticException e) {
+            if (showErrors) {
+                etAmount.setError("Invalid amount format");
+            }
             return;
         }
 
+        invalidateQr();
+        final int generation = qrGeneration;
+        final int targetSizePx = QrRenderer.targetSizePx(ivQrCode, QR_SIZE_DP);
+        qrTask = appExecutors.computation().submit(
+                () -> buildSignedQrCode(generation, amountMinor, currencyStr, targetSizePx, showErrors));
+    }
 
-        PrivateKey privateKey = UserKeyPairManager.getUserPrivateKey(currentLoggedInUsername);
-        if (privateKey == null) {
-            Toast.makeText(this, "Error: Could not retrieve private key for signing.", Toast.LENGTH_LONG).show();
-            Log.e(TAG, "Private key is null for user: " + currentLoggedInUsername);
-            return;
-        }
-
-        // 1. Prepare data for signing
-        JSONObject dataToSignJson = new JSONObject();
-        String timestamp = getIso8601Timestamp();
+    // Background: signs (or reuses) and renders one request, posting the result if still current.
+    // Only explicitly generated codes are cached; previews still reuse what is there.
+    private void buildSignedQrCode(int generation, long amountMinor, String currency, int targetSizePx,
+                                   boolean cacheResult) {
         try {
-            dataToSignJson.put("payeeUsername", currentLoggedInUsername);
-            dataToSignJson.put("amount", amountStr);
-            dataToSignJson.put("currency", currencyStr);
-            dataToSignJson.put("timestamp", timestamp);
-            // Add any other fields you want to be part of the signed data
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating JSON for dataToSign", e);
-            Toast.makeText(this, "Error preparing data.", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        // 2. Create Canonical String from dataToSignJson for reliable signature
-        // A common way is to sort keys alphabetically and concatenate key=value pairs
-        String canonicalDataToSign = createCanonicalString(dataToSignJson);
-        if (canonicalDataToSign == null) {
-            Log.e(TAG, "Failed to create canonical string for signing.");
-            Toast.makeText(this, "Error preparing signature data.", Toast.LENGTH_SHORT).show();
+            keyPairSetup.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error setting up key pair", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return;
         }
-        Log.d(TAG, "Canonical data to sign: " + canonicalDataToSign);
-
-
-        // 3. Sign the canonical data
-        String signatureBase64;
-        try {
-            signatureBase64 = SecurityUtils.signData(canonicalDataToSign, privateKey);
-            if (signatureBase64 == null) {
-                throw new Exception("Signing returned null");
+        if (generation != qrGeneration) return;
+
+        // Fixed-amount codes are shown over and over: reuse a payload signed with the current key
+        // while it is fresh, instead of signing through the keystore again
+        PublicKey publicKey = UserKeyPairManager.getUserPublicKey(getApplicationContext(), currentLoggedInUsername);
+        String keyId = SignedQrCache.keyId(publicKey);
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        String cachedPayload = keyId != null
+                ? signedQrCache.get(currentLoggedInUsername, amountMinor, currency, keyId, nowSeconds) : null;
+        final String finalQrPayload;
+        if (cachedPayload != null) {
+            finalQrPayload = cachedPayload;
+            Log.d(TAG, "Reusing signed QR payload for " + amountMinor + " " + currency);
+        } else {
+            finalQrPayload = signPaymentRequest(generation, amountMinor, currency, nowSeconds);
+            if (finalQrPayload == null) {
+                return;
+            }
+            if (cacheResult && keyId != null) {
+                signedQrCache.put(currentLoggedInUsername, amountMinor, currency, keyId, finalQrPayload);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error signing data", e);
-            Toast.makeText(this, "Error signing QR data.", Toast.LENGTH_LONG).show();
-            return;
-        }
-        Log.d(TAG, "Generated Signature: " + signatureBase64);
-
-        // 4. Construct the full QR code payload
-        JSONObject qrPayloadJson = new JSONObject();
-        try {
-            qrPayloadJson.put("type", "paymentRequest");
-            qrPayloadJson.put("version", "1.0");
-            qrPayloadJson.put("payeeUsername", currentLoggedInUsername); // Redundant but can be useful for quick display
-            qrPayloadJson.put("amount", amountStr); // Redundant
-            qrPayloadJson.put("currency", currencyStr); // Redundant
-            qrPayloadJson.put("timestamp", timestamp); // Redundant for display, but part of outer object too
-            qrPayloadJson.put("dataToSign", dataToSignJson); // The actual signed data block
-            qrPayloadJson.put("signatureAlgorithm", SecurityUtils.SIGNATURE_ALGORITHM); // Good practice to include
-            qrPayloadJson.put("signature", signatureBase64);
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating final QR payload JSON", e);
-            Toast.makeText(this, "Error creating QR payload.", Toast.LENGTH_SHORT).show();
-            return;
         }
+        if (generation != qrGeneration) return;
 
-        String finalQrPayload = qrPayloadJson.toString();
-        Log.i(TAG, "Final QR Payload: " + finalQrPayload);
-        tvQrPayloadDebug.setText("QR Payload: " + finalQrPayload);
-        tvQrPayloadDebug.setVisibility(View.VISIBLE);
-
-
-        // 5. Generate and display QR code image
+        // Render the QR code image
+        final Bitmap bitmap;
         try {
-            Bitmap bitmap = encodeAsBitmap(finalQrPayload, 600, 600); // Adjust size as needed
-            if (bitmap != null) {
-                ivQrCode.setImageBitmap(bitmap);
-                ivQrCode.setBackgroundColor(ContextCompat.getColor(this, android.R.color.transparent)); // Remove placeholder background
-            } else {
-                Toast.makeText(this, "Failed to generate QR code image.", Toast.LENGTH_SHORT).show();
-                ivQrCode.setImageResource(R.drawable.ic_warning_red); // Show an error icon
+            synchronized (qrRenderer) {
+                if (generation != qrGeneration) return;
+                bitmap = qrRenderer.render(finalQrPayload, targetSizePx, shownQr);
             }
         } catch (WriterException e) {
             Log.e(TAG, "Error generating QR code bitmap", e);
-            Toast.makeText(this, "Error displaying QR code.", Toast.LENGTH_SHORT).show();
-            ivQrCode.setImageResource(R.drawable.ic_warning_red);
+            postQrError(generation, "Error displaying QR code.");
+            return;
+        }
+        if (bitmap == null) {
+            postQrError(generation, "Failed to generate QR code image.");
+            return;
         }
-    }
 
-    private String getIso8601Timestamp() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return sdf.format(new Date());
+        appExecutors.mainThread().execute(() -> {
+            if (generation != qrGeneration || isDestroyed()) return; // The inputs changed; never show a stale code
+            shownQr = bitmap;
+            // Nearest-neighbour when fitCenter scales up the last partial module, so edges stay sharp
+            BitmapDrawable drawable = new BitmapDrawable(getResources(), bitmap);
+            drawable.setFilterBitmap(false);
+            ivQrCode.setImageDrawable(drawable);
+            ivQrCode.setBackgroundColor(ContextCompat.getColor(this, android.R.color.transparent)); // Remove placeholder background
+            tvQrPayloadDebug.setText("QR Payload: " + finalQrPayload);
+            tvQrPayloadDebug.setVisibility(View.VISIBLE);
+        });
     }
 
     /**
-     * Creates a canonical string representation of a JSONObject for signing.
-     * Sorts keys alphabetically and concatenates key=value pairs with '&'.
-     * Example: {"b": "valB", "a": "valA"} -> "a=valA&b=valB"
-     * This ensures that the string to sign is always the same if the data is the same,
-     * regardless of JSON key order.
-     *
-     * @param json The JSONObject to canonicalize.
-     * @return The canonical string, or null on error.
+     * Background: encodes and signs a payment request.
+     * @return QR text of the signed request, or null after posting an error.
      */
-    private String createCanonicalString(JSONObject json) {
-        if (json == null) return null;
-        try {
-            // Use TreeMap to automatically sort keys alphabetically
-            Map<String, String> sortedMap = new TreeMap<>();
-            java.util.Iterator<String> keys = json.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                sortedMap.put(key, json.getString(key));
-            }
-
-            StringBuilder sb = new StringBuilder();
-            boolean first = true;
-            for (Map.Entry<String, String> entry : sortedMap.entrySet()) {
-                if (!first) {
-                    sb.append("&");
-                }
-                sb.append(entry.getKey()).append("=").append(entry.getValue());
-                first = false;
-            }
-            return sb.toString();
-        } catch (JSONException e) {
-            Log.e(TAG, "Could not create canonical string from JSON", e);
+    private String signPaymentRequest(int generation, long amountMinor, String currency, long nowSeconds) {
+        PrivateKey privateKey = UserKeyPairManager.getUserPrivateKey(currentLoggedInUsername);
+        if (privateKey == null) {
+            Log.e(TAG, "Private key is null for user: " + currentLoggedInUsername);
+            postQrError(generation, "Error: Could not retrieve private key for signing.");
             return null;
         }
-    }
 
-
-    /**
-     * Encodes a string into a QR code bitmap.
-     *
-     * @param content The string content to encode.
-     * @param width   The desired width of the QR code bitmap.
-     * @param height  The desired height of the QR code bitmap.
-     * @return The generated QR code as a Bitmap, or null on error.
-     * @throws WriterException If encoding fails.
-     */
-    private Bitmap encodeAsBitmap(String content, int width, int height) throws WriterException {
-        if (content == null || content.isEmpty()) {
-            return null;
-        }
-        MultiFormatWriter writer = new MultiFormatWriter();
-        BitMatrix result;
+        // 1. Encode the fields to sign; the signature covers exactly these bytes
+        String signatureAlgorithm = PaymentPayloads.DEFAULT_SIGNATURE_ALGORITHM;
+        byte[] body;
         try {
-            result = writer.encode(content, BarcodeFormat.QR_CODE, width, height, null);
-        } catch (IllegalArgumentException iae) {
-            // Unsupported format
-            Log.e(TAG, "IllegalArgumentException during QR encoding", iae);
+            body = PaymentRequestCodec.encodeBody(currentLoggedInUsername, amountMinor, currency,
+                    nowSeconds, signatureAlgorithm);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Error encoding payment request", e);
+            postQrError(generation, "Error preparing data.");
             return null;
         }
 
-        int w = result.getWidth();
-        int h = result.getHeight();
-        int[] pixels = new int[w * h];
-        for (int y = 0; y < h; y++) {
-            int offset = y * w;
-            for (int x = 0; x < w; x++) {
-                pixels[offset + x] = result.get(x, y) ? Color.BLACK : Color.WHITE;
-            }
+        // 2. Sign the encoded body
+        byte[] signature = SecurityUtils.signData(body, 0, body.length, privateKey, signatureAlgorithm);
+        if (signature == null) {
+            Log.e(TAG, "Error signing data");
+            postQrError(generation, "Error signing QR data.");
+            return null;
         }
 
-        Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        bitmap.setPixels(pixels, 0, w, 0, 0, w, h);
-        return bitmap;
+        // 3. Construct the full QR code payload: body || signature as QR text
+        String qrPayload = QrTransport.encode(PaymentRequestCodec.appendSignature(body, signature));
+        Log.i(TAG, "Final QR Payload (" + qrPayload.length() + " chars): " + qrPayload);
+        return qrPayload;
     }
-}
 
+    private void postQrError(final int generation, final String message) {
+        appExecutors.mainThread().execute(() -> {
+            if (generation != qrGeneration || isDestroyed()) return;
+            Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
+            ivQrCode.setImageResource(R.drawable.ic_warning_red); // Show an error icon
+        });
+    }
+}
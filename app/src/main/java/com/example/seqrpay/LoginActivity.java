@@ -3,7 +3,6 @@ package com.example.seqrpay;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.content.Intent;
-import android.content.SharedPreferences; // <<<=== ADD IMPORT
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
@@ -15,8 +14,7 @@ public class LoginActivity extends AppCompatActivity {
     private EditText etUsername, etPassword;
     private Button btnLogin;
     private ProgressBar progressBar;
-    private DatabaseHelper dbHelper;
-    private AppExecutors appExecutors;
+    private Authenticator authenticator;
 
     // Constants for SharedPreferences
     public static final String SHARED_PREFS_NAME = "SeQRPayPrefs"; // <<<=== ADD CONSTANT
@@ -33,8 +31,7 @@ public class LoginActivity extends AppCompatActivity {
         btnLogin = findViewById(R.id.btn_login);
         progressBar = findViewById(R.id.login_progress);
 
-        dbHelper = DatabaseHelper.getInstance(this);
-        appExecutors = AppExecutors.getInstance();
+        authenticator = new Authenticator(this);
 
 
         btnLogin.setOnClickListener(new View.OnClickListener() {
@@ -49,24 +46,19 @@ public class LoginActivity extends AppCompatActivity {
                 }
                 showLoading(true);
 
-                appExecutors.diskIO().execute(() -> {
-                    final boolean isValidUser = dbHelper.checkUser(username, password);
-                    appExecutors.mainThread().execute(() -> {
-                        showLoading(false);
-                        if (isValidUser) {
-                            // --- SAVE USERNAME TO SharedPreferences ---
-                            SharedPreferences prefs = getSharedPreferences(SHARED_PREFS_NAME, MODE_PRIVATE); // <<<=== ADDED
-                            SharedPreferences.Editor editor = prefs.edit(); // <<<=== ADDED
-                            editor.putString(KEY_LOGGED_IN_USERNAME, username); // <<<=== ADDED
-                            editor.apply(); // <<<=== ADDED
+                // Credentials read on diskRead, PBKDF2 on computation, result on the main thread
+                authenticator.login(username, password, userId -> {
+                    showLoading(false);
+                    if (userId >= 0) {
+                        // Every other activity reads the user from the session from here on
+                        Session.start(LoginActivity.this, userId, username);
 
-                            Toast.makeText(LoginActivity.this, "Login Successful", Toast.LENGTH_SHORT).show(); // Added for feedback
-                            startActivity(new Intent(LoginActivity.this, DashboardActivity.class));
-                            finish();
-                        } else {
-                            Toast.makeText(LoginActivity.this, "Invalid credentials", Toast.LENGTH_SHORT).show();
-                        }
-                    });
+                        Toast.makeText(LoginActivity.this, "Login Successful", Toast.LENGTH_SHORT).show(); // Added for feedback
+                        startActivity(new Intent(LoginActivity.this, DashboardActivity.class));
+                        finish();
+                    } else {
+                        Toast.makeText(LoginActivity.this, "Invalid credentials", Toast.LENGTH_SHORT).show();
+                    }
                 });
             }
         });
@@ -0,0 +1,76 @@
+package com.example.seqrpay;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Conversions between user-facing decimal amounts and the integer minor units
+ * (cents, tiyn, ...) that are stored in the database.
+ */
+public class MoneyUtils {
+
+    // Currency assumed for rows and inputs that never carried one
+    public static final String DEFAULT_CURRENCY = "USD";
+
+    /**
+     * Number of minor-unit digits for an ISO 4217 currency code (2 for USD, 0 for JPY).
+     * Unknown codes fall back to 2.
+     */
+    public static int fractionDigits(String currencyCode) {
+        try {
+            int digits = Currency.getInstance(currencyCode).getDefaultFractionDigits();
+            return digits < 0 ? 2 : digits;
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return 2;
+        }
+    }
+
+    /**
+     * Parses a plain decimal amount ("10.50", "-3") into minor units of the given currency.
+     * @throws NumberFormatException if the text is not a number or has more decimals than the currency allows.
+     * @throws ArithmeticException if the value does not fit in a long.
+     */
+    public static long parseMinorUnits(String decimalAmount, String currencyCode) {
+        BigDecimal value = new BigDecimal(decimalAmount.trim());
+        try {
+            return value.movePointRight(fractionDigits(currencyCode)).longValueExact();
+        } catch (ArithmeticException e) {
+            if (value.scale() > fractionDigits(currencyCode)) {
+                throw new NumberFormatException("Too many decimal places for " + currencyCode + ": " + decimalAmount);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Plain decimal representation of a minor-unit amount, e.g. 1050 USD -> "10.50".
+     */
+    public static String toDecimalString(long minorUnits, String currencyCode) {
+        return BigDecimal.valueOf(minorUnits, fractionDigits(currencyCode)).toPlainString();
+    }
+
+    /**
+     * Display string for a balance: "$1234.56", or "-$12.00" when overdrawn.
+     */
+    public static String formatBalance(long minorUnits, String currencyCode) {
+        String signed = format(minorUnits, currencyCode);
+        return minorUnits < 0 ? signed : signed.substring(1);
+    }
+
+    /**
+     * Signed display string for lists, e.g. 5000 USD -> "+$50.00", -1500 KZT -> "-KZT 15.00".
+     */
+    public static String format(long minorUnits, String currencyCode) {
+        String code = currencyCode != null ? currencyCode : DEFAULT_CURRENCY;
+        String symbol;
+        try {
+            symbol = Currency.getInstance(code).getSymbol(Locale.US);
+        } catch (IllegalArgumentException e) {
+            symbol = code;
+        }
+        String sign = minorUnits < 0 ? "-" : "+";
+        String magnitude = BigDecimal.valueOf(minorUnits, fractionDigits(code)).abs().toPlainString();
+        return sign + symbol + (symbol.length() > 1 ? " " : "") + magnitude;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.seqrpay;
+
+// Income and spending of one user in one calendar month and currency, read from the rollup table
+public class MonthlySummary {
+    private final int yearMonth; // e.g. 202505 for May 2025 (device local time)
+    private final String currency;
+    private long incomeMinor;    // Sum of credits, >= 0
+    private long outgoingMinor;  // Sum of debits as a positive magnitude, >= 0
+    private int incomeCount;
+    private int outgoingCount;
+
+    public MonthlySummary(int yearMonth, String currency) {
+        this.yearMonth = yearMonth;
+        this.currency = currency;
+    }
+
+    void addIncome(long amountMinor, int count) {
+        incomeMinor += amountMinor;
+        incomeCount += count;
+    }
+
+    void addOutgoing(long amountMinor, int count) {
+        outgoingMinor += Math.abs(amountMinor);
+        outgoingCount += count;
+    }
+
+    public int getYearMonth() {
+        return yearMonth;
+    }
+
+    public int getYear() {
+        return yearMonth / 100;
+    }
+
+    public int getMonth() {
+        return yearMonth % 100; // 1-12
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public long getIncomeMinor() {
+        return incomeMinor;
+    }
+
+    public long getOutgoingMinor() {
+        return outgoingMinor;
+    }
+
+    public int getIncomeCount() {
+        return incomeCount;
+    }
+
+    public int getOutgoingCount() {
+        return outgoingCount;
+    }
+
+    public long getNetMinor() {
+        return incomeMinor - outgoingMinor;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.seqrpay;
+
+import android.util.LruCache;
+
+import java.security.PublicKey;
+
+/**
+ * Bounded LRU of decoded payee public keys, so repeat scans of the same merchant skip the
+ * Base64 decode and KeyFactory.generatePublic.
+ *
+ * Entries are keyed by payee and carry the encoded key they were decoded from (its fingerprint).
+ * A lookup only hits if the caller's current encoded key is the same string, so a rotated key can
+ * never be answered with the old one even if invalidate() was missed. Thread-safe.
+ */
+public class PayeeKeyCache {
+
+    private static final class Entry {
+        final String encodedKey;
+        final PublicKey publicKey;
+
+        Entry(String encodedKey, PublicKey publicKey) {
+            this.encodedKey = encodedKey;
+            this.publicKey = publicKey;
+        }
+    }
+
+    private final LruCache<String, Entry> entries;
+
+    public PayeeKeyCache(int maxPayees) {
+        entries = new LruCache<>(maxPayees);
+    }
+
+    /**
+     * @param payee Payee username.
+     * @param encodedKey The payee's current Base64 X.509 public key.
+     * @return The decoded key if it is cached for exactly this encoding, else null.
+     */
+    public PublicKey get(String payee, String encodedKey) {
+        Entry entry = entries.get(payee);
+        return entry != null && entry.encodedKey.equals(encodedKey) ? entry.publicKey : null;
+    }
+
+    public void put(String payee, String encodedKey, PublicKey publicKey) {
+        entries.put(payee, new Entry(encodedKey, publicKey));
+    }
+
+    // Call when a payee's key is rotated or removed
+    public void invalidate(String payee) {
+        entries.remove(payee);
+    }
+
+    public int hitCount() {
+        return entries.hitCount();
+    }
+
+    public int missCount() {
+        return entries.missCount();
+    }
+}
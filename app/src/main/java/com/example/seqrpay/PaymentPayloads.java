@@ -0,0 +1,92 @@
+package com.example.seqrpay;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shared definition of the signed payment-request QR payload, used by the generator, the scanner
+ * and the batch verifier so they can never disagree on what bytes were signed.
+ *
+ * Payload JSON: {"type": "paymentRequest", "dataToSign": {...}, "signature": "...", ...}.
+ * The signature covers the canonical form of dataToSign (see {@link #canonicalize(JSONObject)}).
+ */
+public class PaymentPayloads {
+
+    private static final String TAG = "PaymentPayloads";
+
+    public static final String TYPE_PAYMENT_REQUEST = "paymentRequest";
+    public static final String FIELD_TYPE = "type";
+    public static final String FIELD_DATA_TO_SIGN = "dataToSign";
+    public static final String FIELD_SIGNATURE = "signature";
+    public static final String FIELD_SIGNATURE_ALGORITHM = "signatureAlgorithm";
+    public static final String FIELD_PAYEE_USERNAME = "payeeUsername";
+    public static final String FIELD_AMOUNT = "amount";
+    public static final String FIELD_CURRENCY = "currency";
+    public static final String FIELD_TIMESTAMP = "timestamp";
+
+    // Signature encoding written into new payloads: fixed 64-byte r || s keeps the QR smaller.
+    // Payloads without a signatureAlgorithm field predate it and carry DER.
+    public static final String DEFAULT_SIGNATURE_ALGORITHM = SecurityUtils.SIGNATURE_ALGORITHM_P1363;
+
+    // How long after its timestamp a payment request is meant to be honoured. Generators must not
+    // hand out a signed request older than this (see SignedQrCache).
+    public static final long PAYMENT_REQUEST_VALIDITY_SECONDS = 15 * 60;
+
+    /**
+     * Creates a canonical string representation of a JSONObject for signing/verification.
+     * Sorts keys alphabetically and concatenates key=value pairs with '&'.
+     * Example: {"b": "valB", "a": "valA"} -> "a=valA&b=valB"
+     * This ensures that the string to sign is always the same if the data is the same,
+     * regardless of JSON key order.
+     *
+     * @param json The JSONObject to canonicalize.
+     * @return The canonical string, or null on error.
+     */
+    public static String canonicalize(JSONObject json) {
+        if (json == null) return null;
+        try {
+            // Use TreeMap to automatically sort keys alphabetically
+            Map<String, String> sortedMap = new TreeMap<>();
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                sortedMap.put(key, json.getString(key));
+            }
+
+            StringBuilder sb = new StringBuilder();
+            boolean first = true;
+            for (Map.Entry<String, String> entry : sortedMap.entrySet()) {
+                if (!first) {
+                    sb.append("&");
+                }
+                sb.append(entry.getKey()).append("=").append(entry.getValue());
+                first = false;
+            }
+            return sb.toString();
+        } catch (JSONException e) {
+            Log.e(TAG, "Could not create canonical string from JSON", e);
+            return null;
+        }
+    }
+
+    /**
+     * The signature encoding a payload declares, DER when the field is absent.
+     */
+    public static String signatureAlgorithmOf(JSONObject qrJson) {
+        return qrJson.optString(FIELD_SIGNATURE_ALGORITHM, SecurityUtils.SIGNATURE_ALGORITHM);
+    }
+
+    /**
+     * Whether parsed QR JSON is a signed payment request (has the signed block and a signature).
+     */
+    public static boolean isSignedPaymentRequest(JSONObject qrJson) {
+        return TYPE_PAYMENT_REQUEST.equals(qrJson.optString(FIELD_TYPE))
+                && qrJson.has(FIELD_DATA_TO_SIGN) && qrJson.has(FIELD_SIGNATURE);
+    }
+}
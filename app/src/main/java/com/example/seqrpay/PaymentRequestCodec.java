@@ -0,0 +1,227 @@
+package com.example.seqrpay;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of a signed payment request, replacing the JSON payload that repeated every
+ * field twice and spelled out the algorithm and an ISO-8601 timestamp.
+ *
+ * Layout (version 1), all integers unsigned LEB128 varints:
+ * <pre>
+ * version (1 byte) | algorithm id (1 byte) | payee length | payee (UTF-8)
+ * | amount (minor units) | currency (3 ASCII letters) | timestamp (epoch seconds) | signature
+ * </pre>
+ * Everything before the signature is the signed body: the signature covers exactly those bytes,
+ * so there is no canonicalization step and the algorithm id is authenticated too. The signature
+ * runs to the end of the payload (64 bytes for P1363, up to 72 for DER).
+ *
+ * A typical request is about 85 bytes, against about 450 characters of JSON. On the QR it is carried
+ * as text by {@link QrTransport}. Pure Java, so it runs in local unit tests.
+ */
+public class PaymentRequestCodec {
+
+    public static final int FORMAT_VERSION = 1;
+
+    // One-byte ids for SecurityUtils signature algorithm names; never renumber
+    static final int ALGORITHM_ECDSA_DER = 1;
+    static final int ALGORITHM_ECDSA_P1363 = 2;
+
+    private static final int MAX_PAYEE_BYTES = 255;
+    private static final int MAX_SIGNATURE_BYTES = 72;
+
+    // A decoded payload
+    public static class PaymentRequest {
+        private final String payeeUsername;
+        private final long amountMinor;
+        private final String currency;
+        private final long epochSeconds;
+        private final String signatureAlgorithm;
+        private final byte[] signedBody;
+        private final byte[] signature;
+
+        PaymentRequest(String payeeUsername, long amountMinor, String currency, long epochSeconds,
+                       String signatureAlgorithm, byte[] signedBody, byte[] signature) {
+            this.payeeUsername = payeeUsername;
+            this.amountMinor = amountMinor;
+            this.currency = currency;
+            this.epochSeconds = epochSeconds;
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.signedBody = signedBody;
+            this.signature = signature;
+        }
+
+        public String getPayeeUsername() {
+            return payeeUsername;
+        }
+
+        public long getAmountMinor() {
+            return amountMinor;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        public long getEpochSeconds() {
+            return epochSeconds;
+        }
+
+        // SecurityUtils.SIGNATURE_ALGORITHM or SIGNATURE_ALGORITHM_P1363
+        public String getSignatureAlgorithm() {
+            return signatureAlgorithm;
+        }
+
+        // The exact bytes the signature covers
+        public byte[] getSignedBody() {
+            return signedBody;
+        }
+
+        public byte[] getSignature() {
+            return signature;
+        }
+    }
+
+    private PaymentRequestCodec() {
+    }
+
+    /**
+     * Encodes the part of a request that gets signed.
+     * @param amountMinor Amount in minor units of currency, not negative.
+     * @param currency ISO 4217 code, three upper-case letters.
+     * @param epochSeconds Creation time.
+     * @param signatureAlgorithm How the signature appended by {@link #appendSignature} is encoded.
+     * @return The body to sign.
+     * @throws IllegalArgumentException if a field cannot be represented.
+     */
+    public static byte[] encodeBody(String payeeUsername, long amountMinor, String currency,
+                                    long epochSeconds, String signatureAlgorithm) {
+        byte[] payee = payeeUsername.getBytes(StandardCharsets.UTF_8);
+        if (payee.length == 0 || payee.length > MAX_PAYEE_BYTES) {
+            throw new IllegalArgumentException("Payee username must be 1-" + MAX_PAYEE_BYTES + " bytes");
+        }
+        if (amountMinor < 0 || epochSeconds < 0) {
+            throw new IllegalArgumentException("Amount and timestamp must not be negative");
+        }
+        checkCurrency(currency);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + payee.length);
+        out.write(FORMAT_VERSION);
+        out.write(algorithmId(signatureAlgorithm));
+        writeVarint(out, payee.length);
+        out.write(payee, 0, payee.length);
+        writeVarint(out, amountMinor);
+        for (int i = 0; i < 3; i++) {
+            out.write(currency.charAt(i));
+        }
+        writeVarint(out, epochSeconds);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return body || signature, the complete payload.
+     */
+    public static byte[] appendSignature(byte[] body, byte[] signature) {
+        byte[] payload = Arrays.copyOf(body, body.length + signature.length);
+        System.arraycopy(signature, 0, payload, body.length, signature.length);
+        return payload;
+    }
+
+    /**
+     * Splits a payload into its fields, the signed body and the signature. Does not verify.
+     * @throws IllegalArgumentException if the payload is malformed or of an unknown version.
+     */
+    public static PaymentRequest decode(byte[] payload) {
+        int[] pos = {0};
+        int version = readByte(payload, pos);
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported payment request version: " + version);
+        }
+        String signatureAlgorithm = algorithmName(readByte(payload, pos));
+        long payeeLength = readVarint(payload, pos);
+        if (payeeLength == 0 || payeeLength > MAX_PAYEE_BYTES || pos[0] + payeeLength > payload.length) {
+            throw new IllegalArgumentException("Bad payee length");
+        }
+        String payee = new String(payload, pos[0], (int) payeeLength, StandardCharsets.UTF_8);
+        pos[0] += (int) payeeLength;
+        long amountMinor = readVarint(payload, pos);
+        if (pos[0] + 3 > payload.length) {
+            throw new IllegalArgumentException("Truncated currency");
+        }
+        String currency = new String(payload, pos[0], 3, StandardCharsets.US_ASCII);
+        checkCurrency(currency);
+        pos[0] += 3;
+        long epochSeconds = readVarint(payload, pos);
+
+        int bodyLength = pos[0];
+        int signatureLength = payload.length - bodyLength;
+        boolean p1363 = SecurityUtils.SIGNATURE_ALGORITHM_P1363.equals(signatureAlgorithm);
+        if (p1363 ? signatureLength != SignatureFormats.P256_P1363_LENGTH
+                : signatureLength < 8 || signatureLength > MAX_SIGNATURE_BYTES) {
+            throw new IllegalArgumentException("Bad signature length: " + signatureLength);
+        }
+        return new PaymentRequest(payee, amountMinor, currency, epochSeconds, signatureAlgorithm,
+                Arrays.copyOf(payload, bodyLength), Arrays.copyOfRange(payload, bodyLength, payload.length));
+    }
+
+    static int algorithmId(String signatureAlgorithm) {
+        if (SecurityUtils.SIGNATURE_ALGORITHM.equals(signatureAlgorithm)) {
+            return ALGORITHM_ECDSA_DER;
+        }
+        if (SecurityUtils.SIGNATURE_ALGORITHM_P1363.equals(signatureAlgorithm)) {
+            return ALGORITHM_ECDSA_P1363;
+        }
+        throw new IllegalArgumentException("No id for signature algorithm: " + signatureAlgorithm);
+    }
+
+    static String algorithmName(int id) {
+        switch (id) {
+            case ALGORITHM_ECDSA_DER:
+                return SecurityUtils.SIGNATURE_ALGORITHM;
+            case ALGORITHM_ECDSA_P1363:
+                return SecurityUtils.SIGNATURE_ALGORITHM_P1363;
+            default:
+                throw new IllegalArgumentException("Unknown signature algorithm id: " + id);
+        }
+    }
+
+    private static void checkCurrency(String currency) {
+        if (currency == null || currency.length() != 3) {
+            throw new IllegalArgumentException("Currency must be a 3-letter code");
+        }
+        for (int i = 0; i < 3; i++) {
+            char c = currency.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                throw new IllegalArgumentException("Currency must be upper-case letters: " + currency);
+            }
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] in, int[] pos) {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            int b = readByte(in, pos);
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static int readByte(byte[] in, int[] pos) {
+        if (pos[0] >= in.length) {
+            throw new IllegalArgumentException("Truncated payment request");
+        }
+        return in[pos[0]++] & 0xff;
+    }
+}
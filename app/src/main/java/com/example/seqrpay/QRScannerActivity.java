@@ -38,6 +38,10 @@ public class QRScannerActivity extends AppCompatActivity {
     public static final String EXTRA_PAYEE_USERNAME = "com.example.seqrpay.EXTRA_PAYEE_USERNAME";
     public static final String EXTRA_AMOUNT = "com.example.seqrpay.EXTRA_AMOUNT";
     public static final String EXTRA_CURRENCY = "com.example.seqrpay.EXTRA_CURRENCY";
+    public static final String EXTRA_SIGNATURE_ALGORITHM = "com.example.seqrpay.EXTRA_SIGNATURE_ALGORITHM";
+    // Binary payment requests (PaymentRequestCodec): the signed body and signature, as byte[]
+    public static final String EXTRA_SIGNED_BYTES = "com.example.seqrpay.EXTRA_SIGNED_BYTES";
+    public static final String EXTRA_SIGNATURE_BYTES = "com.example.seqrpay.EXTRA_SIGNATURE_BYTES";
 
 
     @Override
@@ -94,26 +98,36 @@ public class QRScannerActivity extends AppCompatActivity {
         // Always pass the original full QR content.
         intent.putExtra(ScanResultActivity.EXTRA_PAYMENT_DATA, qrContent);
 
+        if (QrTransport.isBinaryPayload(qrContent)) {
+            handleBinaryPaymentRequest(intent, qrContent);
+            startActivity(intent);
+            finish();
+            return;
+        }
+
         try {
-            // Attempt to parse as our custom signed JSON payload first
+            // Attempt to parse as our custom signed JSON payload (older QR codes)
             JSONObject qrJson = new JSONObject(qrContent);
-            String type = qrJson.optString("type");
 
-            if ("paymentRequest".equals(type) && qrJson.has("dataToSign") && qrJson.has("signature")) {
+            if (PaymentPayloads.isSignedPaymentRequest(qrJson)) {
                 Log.i(TAG, "Identified as a signed payment request QR.");
                 intent.putExtra(EXTRA_QR_PAYLOAD_TYPE, PAYLOAD_TYPE_SIGNED_PAYMENT);
 
-                JSONObject dataToSign = qrJson.getJSONObject("dataToSign");
-                String signature = qrJson.getString("signature");
-                String payeeUsername = dataToSign.optString("payeeUsername", qrJson.optString("payeeUsername"));
-                String amount = dataToSign.optString("amount", qrJson.optString("amount"));
-                String currency = dataToSign.optString("currency", qrJson.optString("currency"));
+                JSONObject dataToSign = qrJson.getJSONObject(PaymentPayloads.FIELD_DATA_TO_SIGN);
+                String signature = qrJson.getString(PaymentPayloads.FIELD_SIGNATURE);
+                String payeeUsername = dataToSign.optString(PaymentPayloads.FIELD_PAYEE_USERNAME,
+                        qrJson.optString(PaymentPayloads.FIELD_PAYEE_USERNAME));
+                String amount = dataToSign.optString(PaymentPayloads.FIELD_AMOUNT,
+                        qrJson.optString(PaymentPayloads.FIELD_AMOUNT));
+                String currency = dataToSign.optString(PaymentPayloads.FIELD_CURRENCY,
+                        qrJson.optString(PaymentPayloads.FIELD_CURRENCY));
 
                 intent.putExtra(EXTRA_SIGNED_DATA_BLOCK, dataToSign.toString());
                 intent.putExtra(EXTRA_SIGNATURE, signature);
                 intent.putExtra(EXTRA_PAYEE_USERNAME, payeeUsername);
                 intent.putExtra(EXTRA_AMOUNT, amount);
                 intent.putExtra(EXTRA_CURRENCY, currency);
+                intent.putExtra(EXTRA_SIGNATURE_ALGORITHM, PaymentPayloads.signatureAlgorithmOf(qrJson));
                 intent.putExtra(ScanResultActivity.EXTRA_URL_TO_SCAN, (String) null); // No external URL to scan for this type
 
             } else {
@@ -130,6 +144,30 @@ public class QRScannerActivity extends AppCompatActivity {
         finish(); // Finish QRScannerActivity after launching the result activity
     }
 
+    /**
+     * Unpacks a binary payment request (see PaymentRequestCodec) for ScanResultActivity.
+     * A corrupt payload is still reported as a signed payment, without the signed bytes,
+     * so the result screen shows it as incomplete rather than scanning it as a URL.
+     * @param intent The intent to be sent to ScanResultActivity.
+     * @param qrContent The raw content from the QR code.
+     */
+    private void handleBinaryPaymentRequest(Intent intent, String qrContent) {
+        Log.i(TAG, "Identified as a binary signed payment request QR.");
+        intent.putExtra(EXTRA_QR_PAYLOAD_TYPE, PAYLOAD_TYPE_SIGNED_PAYMENT);
+        intent.putExtra(ScanResultActivity.EXTRA_URL_TO_SCAN, (String) null);
+        try {
+            PaymentRequestCodec.PaymentRequest request = PaymentRequestCodec.decode(QrTransport.decode(qrContent));
+            intent.putExtra(EXTRA_SIGNED_BYTES, request.getSignedBody());
+            intent.putExtra(EXTRA_SIGNATURE_BYTES, request.getSignature());
+            intent.putExtra(EXTRA_PAYEE_USERNAME, request.getPayeeUsername());
+            intent.putExtra(EXTRA_AMOUNT, MoneyUtils.toDecimalString(request.getAmountMinor(), request.getCurrency()));
+            intent.putExtra(EXTRA_CURRENCY, request.getCurrency());
+            intent.putExtra(EXTRA_SIGNATURE_ALGORITHM, request.getSignatureAlgorithm());
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Malformed binary payment request: " + e.getMessage());
+        }
+    }
+
     /**
      * Handles payloads that are not our signed JSON format.
      * It now treats all such payloads as potential URLs.
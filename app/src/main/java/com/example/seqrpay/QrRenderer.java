@@ -0,0 +1,134 @@
+package com.example.seqrpay;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Renders QR codes into bitmaps without per-render garbage.
+ *
+ * ZXing is asked for the code at module resolution (one bit per module, quiet zone included)
+ * instead of at the output size, so encoding no longer produces a 600x600 BitMatrix. Each module
+ * row is then written into a reused pixel buffer as runs of equal modules scaled to the module
+ * size in pixels, and copied down for the remaining pixel rows of the module. The pixels end up in
+ * one of two pooled RGB_565 bitmaps (half the memory of ARGB_8888; a QR code has no alpha or
+ * colour) sized for the ImageView, so only a change of size allocates. The caller names the bitmap
+ * on screen and the other one is drawn into, so rendering can run off the main thread.
+ *
+ * The module size is a whole number of pixels, so the bitmap is at most the requested size; show
+ * it without filtering so any remaining upscaling keeps edges sharp. Not thread-safe: use one
+ * renderer per screen, from one thread at a time.
+ */
+public class QrRenderer {
+
+    static final int DARK = 0xFF000000;
+    static final int LIGHT = 0xFFFFFFFF;
+
+    private final QRCodeWriter writer = new QRCodeWriter();
+    private final Map<EncodeHintType, Object> hints = QrTransport.encodeHints();
+
+    // Reused between renders; grows to the largest size rendered
+    private int[] pixels = new int[0];
+    // Two bitmaps, so the one being shown is never the one being drawn into
+    private Bitmap first;
+    private Bitmap second;
+
+    /**
+     * Side in pixels to render for an ImageView: its content area once laid out, otherwise its
+     * size in dp converted with the screen density.
+     * @param fallbackDp Size to assume if the view has not been laid out yet.
+     */
+    public static int targetSizePx(ImageView view, int fallbackDp) {
+        int width = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
+        int height = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
+        if (width > 0 && height > 0) {
+            return Math.min(width, height);
+        }
+        return Math.round(fallbackDp * view.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Renders content as a QR code of at most targetSizePx pixels square.
+     * @param displayed The bitmap from an earlier render that is on screen, or null; it is not drawn into.
+     * @return The bitmap, owned by the renderer (do not recycle it), or null if the content cannot be encoded.
+     * @throws WriterException If encoding fails.
+     */
+    public Bitmap render(String content, int targetSizePx, Bitmap displayed) throws WriterException {
+        int side = renderPixels(content, targetSizePx);
+        if (side <= 0) {
+            return null;
+        }
+        boolean useFirst = first != displayed;
+        Bitmap bitmap = useFirst ? first : second;
+        if (bitmap == null || bitmap.isRecycled() || bitmap.getWidth() != side) {
+            bitmap = Bitmap.createBitmap(side, side, Bitmap.Config.RGB_565);
+            if (useFirst) {
+                first = bitmap;
+            } else {
+                second = bitmap;
+            }
+        }
+        bitmap.setPixels(pixels, 0, side, 0, 0, side, side);
+        return bitmap;
+    }
+
+    /**
+     * Encodes content and rasterizes it into {@link #pixels}, without touching bitmaps.
+     * @return Side of the rendered square in pixels, or -1 if the content cannot be encoded.
+     */
+    int renderPixels(String content, int targetSizePx) throws WriterException {
+        if (content == null || content.isEmpty()) {
+            return -1;
+        }
+        BitMatrix modules;
+        try {
+            // Width and height 0: one pixel per module
+            modules = writer.encode(content, BarcodeFormat.QR_CODE, 0, 0, hints);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        int moduleSize = Math.max(1, targetSizePx / modules.getWidth());
+        int side = modules.getWidth() * moduleSize;
+        if (pixels.length < side * side) {
+            pixels = new int[side * side];
+        }
+        rasterize(modules, moduleSize, pixels);
+        return side;
+    }
+
+    int[] pixels() {
+        return pixels;
+    }
+
+    /**
+     * Scales a square module matrix into pixels, side = modules * moduleSize, row-major.
+     */
+    static void rasterize(BitMatrix modules, int moduleSize, int[] pixels) {
+        int count = modules.getWidth();
+        int side = count * moduleSize;
+        for (int my = 0; my < count; my++) {
+            int rowStart = my * moduleSize * side;
+            int x = 0;
+            while (x < count) {
+                boolean dark = modules.get(x, my);
+                int runEnd = x + 1;
+                while (runEnd < count && modules.get(runEnd, my) == dark) {
+                    runEnd++;
+                }
+                Arrays.fill(pixels, rowStart + x * moduleSize, rowStart + runEnd * moduleSize, dark ? DARK : LIGHT);
+                x = runEnd;
+            }
+            for (int r = 1; r < moduleSize; r++) {
+                System.arraycopy(pixels, rowStart, pixels, rowStart + r * side, side);
+            }
+        }
+    }
+}
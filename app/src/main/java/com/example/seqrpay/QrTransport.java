@@ -0,0 +1,195 @@
+package com.example.seqrpay;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Carries binary payloads (see {@link PaymentRequestCodec}) in QR text.
+ *
+ * A QR code is decoded to text, and the app's QR codes used to be JSON, so a binary payload is
+ * written as a short prefix followed by the bytes as text. The prefix tells the scanner it is not
+ * JSON or a URL, and which text encoding follows:
+ * <ul>
+ * <li>"SQP45:" + Base45 (RFC 9285), what GenerateQrActivity shows. Prefix and alphabet are all in
+ * the QR alphanumeric set, so the whole code is encoded in alphanumeric mode at 5.5 bits per
+ * character: about 8.25 bits per payload byte against 10.7 for base64 in byte mode.</li>
+ * <li>"SQPB64:" + unpadded base64url, for text channels where Base45's space and '%' get mangled.</li>
+ * </ul>
+ *
+ * Pure Java (android.util.Base64 is not available in local unit tests, java.util.Base64 needs API 26).
+ */
+public class QrTransport {
+
+    // "SeQRPay binary, Base45"
+    public static final String BASE45_PREFIX = "SQP45:";
+    // "SeQRPay binary, base64url"
+    public static final String BASE64_PREFIX = "SQPB64:";
+
+    // Payment codes are shown on screens and printed on counters: M recovers ~15% damage
+    // without pushing a typical request to a larger version
+    public static final ErrorCorrectionLevel QR_ERROR_CORRECTION = ErrorCorrectionLevel.M;
+    // Quiet zone in modules; 4 is the minimum the QR specification allows
+    public static final int QR_MARGIN_MODULES = 4;
+
+    private static final char[] BASE45_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:".toCharArray();
+    private static final int[] BASE45_VALUES = new int[128];
+    private static final char[] BASE64URL_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int[] BASE64URL_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE45_VALUES, -1);
+        for (int i = 0; i < BASE45_ALPHABET.length; i++) {
+            BASE45_VALUES[BASE45_ALPHABET[i]] = i;
+        }
+        Arrays.fill(BASE64URL_VALUES, -1);
+        for (int i = 0; i < BASE64URL_ALPHABET.length; i++) {
+            BASE64URL_VALUES[BASE64URL_ALPHABET[i]] = i;
+        }
+    }
+
+    private QrTransport() {
+    }
+
+    // Whether scanned text is a binary payload rather than JSON or a URL
+    public static boolean isBinaryPayload(String qrText) {
+        return qrText != null && (qrText.startsWith(BASE45_PREFIX) || qrText.startsWith(BASE64_PREFIX));
+    }
+
+    /**
+     * @return QR text for the payload, in Base45 so the QR can use alphanumeric mode.
+     */
+    public static String encode(byte[] payload) {
+        return BASE45_PREFIX + base45Encode(payload);
+    }
+
+    /**
+     * @return Text for the payload in base64url, for channels other than a QR code.
+     */
+    public static String encodeBase64Url(byte[] payload) {
+        return BASE64_PREFIX + base64UrlEncode(payload);
+    }
+
+    /**
+     * @return The payload carried by text from {@link #encode(byte[])} or {@link #encodeBase64Url(byte[])}.
+     * @throws IllegalArgumentException if the text is not a binary payload or is corrupt.
+     */
+    public static byte[] decode(String qrText) {
+        if (qrText != null && qrText.startsWith(BASE45_PREFIX)) {
+            return base45Decode(qrText.substring(BASE45_PREFIX.length()));
+        }
+        if (qrText != null && qrText.startsWith(BASE64_PREFIX)) {
+            return base64UrlDecode(qrText.substring(BASE64_PREFIX.length()));
+        }
+        throw new IllegalArgumentException("Not a binary QR payload");
+    }
+
+    /**
+     * ZXing hints for payment QR codes: explicit error correction and quiet zone rather than
+     * whatever the library defaults to. No character set hint, so alphanumeric text stays
+     * alphanumeric.
+     */
+    public static Map<EncodeHintType, Object> encodeHints() {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, QR_ERROR_CORRECTION);
+        hints.put(EncodeHintType.MARGIN, QR_MARGIN_MODULES);
+        return hints;
+    }
+
+    // RFC 9285: each 2 bytes become 3 characters, a trailing byte 2 characters, least significant first
+    static String base45Encode(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length / 2) * 3 + (data.length % 2) * 2);
+        int i = 0;
+        for (; i + 1 < data.length; i += 2) {
+            int n = ((data[i] & 0xff) << 8) | (data[i + 1] & 0xff);
+            sb.append(BASE45_ALPHABET[n % 45]).append(BASE45_ALPHABET[(n / 45) % 45])
+                    .append(BASE45_ALPHABET[n / 2025]);
+        }
+        if (i < data.length) {
+            int n = data[i] & 0xff;
+            sb.append(BASE45_ALPHABET[n % 45]).append(BASE45_ALPHABET[n / 45]);
+        }
+        return sb.toString();
+    }
+
+    static byte[] base45Decode(String text) {
+        int length = text.length();
+        if (length % 3 == 1) {
+            throw new IllegalArgumentException("Invalid Base45 length");
+        }
+        byte[] out = new byte[(length / 3) * 2 + (length % 3 == 2 ? 1 : 0)];
+        int o = 0;
+        for (int i = 0; i < length; i += 3) {
+            int n = base45Value(text, i) + base45Value(text, i + 1) * 45;
+            if (i + 2 < length) {
+                n += base45Value(text, i + 2) * 2025;
+                if (n > 0xffff) {
+                    throw new IllegalArgumentException("Invalid Base45 triple at " + i);
+                }
+                out[o++] = (byte) (n >>> 8);
+            } else if (n > 0xff) {
+                throw new IllegalArgumentException("Invalid Base45 pair at " + i);
+            }
+            out[o++] = (byte) n;
+        }
+        return out;
+    }
+
+    private static int base45Value(String text, int index) {
+        char c = text.charAt(index);
+        int value = c < 128 ? BASE45_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid Base45 character at " + index);
+        }
+        return value;
+    }
+
+    static String base64UrlEncode(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length * 4 + 2) / 3);
+        int i = 0;
+        for (; i + 2 < data.length; i += 3) {
+            int n = ((data[i] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8) | (data[i + 2] & 0xff);
+            sb.append(BASE64URL_ALPHABET[n >>> 18]).append(BASE64URL_ALPHABET[(n >>> 12) & 63])
+                    .append(BASE64URL_ALPHABET[(n >>> 6) & 63]).append(BASE64URL_ALPHABET[n & 63]);
+        }
+        int remaining = data.length - i;
+        if (remaining == 1) {
+            int n = (data[i] & 0xff) << 16;
+            sb.append(BASE64URL_ALPHABET[n >>> 18]).append(BASE64URL_ALPHABET[(n >>> 12) & 63]);
+        } else if (remaining == 2) {
+            int n = ((data[i] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8);
+            sb.append(BASE64URL_ALPHABET[n >>> 18]).append(BASE64URL_ALPHABET[(n >>> 12) & 63])
+                    .append(BASE64URL_ALPHABET[(n >>> 6) & 63]);
+        }
+        return sb.toString();
+    }
+
+    static byte[] base64UrlDecode(String text) {
+        int length = text.length();
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid base64url length");
+        }
+        byte[] out = new byte[length * 3 / 4];
+        int o = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int value = c < 128 ? BASE64URL_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid base64url character at " + i);
+            }
+            bits = ((bits << 6) | value) & 0x3fff; // Never more than 13 pending bits
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[o++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.seqrpay;
+
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory copy of the newest rows of the most recently used users' histories, so the dashboard
+ * and the first history page do not query SQLite again on every onCreate/onResume.
+ *
+ * Owned by {@link DatabaseHelper}: it serves first pages from here, writes single inserts through,
+ * and invalidates a user after bulk changes. Each entry holds the newest rowsPerUser rows of one
+ * user (fewer only if the user has fewer rows in total); at most maxUsers entries are kept.
+ *
+ * A write bumps a version counter, and a page read from the database is only stored if no write
+ * happened since the read began, so a slow reader cannot put back rows older than a write.
+ */
+public class RecentTransactionsCache {
+
+    private final int rowsPerUser;
+    private final LruCache<Long, List<Transaction>> entries;
+    // All fields below are guarded by this
+    private long version;
+    private long hits;
+    private long misses;
+
+    RecentTransactionsCache(int maxUsers, int rowsPerUser) {
+        this.rowsPerUser = rowsPerUser;
+        this.entries = new LruCache<>(maxUsers);
+    }
+
+    int getRowsPerUser() {
+        return rowsPerUser;
+    }
+
+    /**
+     * The newest limit rows of a user as a new list, or null on a miss.
+     * Requests for more rows than an entry holds always miss.
+     */
+    synchronized List<Transaction> get(long userId, int limit) {
+        List<Transaction> rows = limit <= rowsPerUser ? entries.get(userId) : null;
+        if (rows == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(rows.subList(0, Math.min(limit, rows.size())));
+    }
+
+    // Version to pass to put() for a read that starts now
+    synchronized long version() {
+        return version;
+    }
+
+    // Stores the newest rows of a user as read from the database at readVersion
+    synchronized void put(long userId, List<Transaction> newestRows, long readVersion) {
+        if (readVersion != version) {
+            return; // A write landed while the rows were being read
+        }
+        entries.put(userId, new ArrayList<>(newestRows.subList(0, Math.min(rowsPerUser, newestRows.size()))));
+    }
+
+    // Write-through for one committed row
+    synchronized void onInsert(long userId, Transaction tx) {
+        version++;
+        List<Transaction> rows = entries.get(userId);
+        if (rows == null) {
+            return;
+        }
+        int position = 0;
+        while (position < rows.size() && isNewer(rows.get(position), tx)) {
+            position++;
+        }
+        if (position == rows.size() && rows.size() >= rowsPerUser) {
+            return; // Older than everything cached; the entry is still the newest rows
+        }
+        rows.add(position, tx);
+        if (rows.size() > rowsPerUser) {
+            rows.remove(rows.size() - 1);
+        }
+    }
+
+    synchronized void invalidate(long userId) {
+        version++;
+        entries.remove(userId);
+    }
+
+    synchronized void invalidateAll() {
+        version++;
+        entries.evictAll();
+    }
+
+    // Same order as the history: date, then tx_id, newest first
+    private static boolean isNewer(Transaction a, Transaction b) {
+        return a.getTimestamp() > b.getTimestamp()
+                || (a.getTimestamp() == b.getTimestamp() && a.getTxId() > b.getTxId());
+    }
+
+    /** First-page requests answered from memory. */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /** First-page requests that had to query the database. */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+}
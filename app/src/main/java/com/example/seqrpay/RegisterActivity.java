@@ -14,8 +14,7 @@ public class RegisterActivity extends AppCompatActivity {
     private EditText etUsername, etPassword, etConfirmPassword;
     private Button btnRegister;
     private ProgressBar progressBar; // <<<=== ADDED
-    private DatabaseHelper dbHelper;
-    private AppExecutors appExecutors; // <<<=== ADDED
+    private Authenticator authenticator;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -29,8 +28,7 @@ public class RegisterActivity extends AppCompatActivity {
         // Assumes <ProgressBar android:id="@+id/register_progress" .../> added to activity_register.xml
         progressBar = findViewById(R.id.register_progress); // <<<=== ADDED (Replace with your ID)
 
-        dbHelper = DatabaseHelper.getInstance(this); // <<<=== MODIFIED
-        appExecutors = AppExecutors.getInstance(); // <<<=== ADDED
+        authenticator = new Authenticator(this);
 
         btnRegister.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -53,25 +51,18 @@ public class RegisterActivity extends AppCompatActivity {
                 // Show progress, disable button <<<=== ADDED
                 showLoading(true);
 
-                // --- MODIFIED: Execute DB add in background ---
-                appExecutors.diskIO().execute(() -> {
-                    // Runs on background thread
-                    final long result = dbHelper.addUser(username, password);
-
-                    // Post result back to main thread <<<=== ADDED
-                    appExecutors.mainThread().execute(() -> {
-                        // Runs on main thread
-                        showLoading(false); // Hide progress
-                        if (result > 0) {
-                            Toast.makeText(RegisterActivity.this, "Registration successful", Toast.LENGTH_SHORT).show();
-                            startActivity(new Intent(RegisterActivity.this, LoginActivity.class));
-                            finish();
-                        } else if (result == -2) { // Specific code for duplicate username
-                            Toast.makeText(RegisterActivity.this, "Registration failed: Username already exists", Toast.LENGTH_SHORT).show();
-                        } else { // General failure (result == -1 or other)
-                            Toast.makeText(RegisterActivity.this, "Registration failed (Error code: " + result + ")", Toast.LENGTH_SHORT).show();
-                        }
-                    });
+                // Hash on computation, insert on diskWrite, result on the main thread
+                authenticator.register(username, password, result -> {
+                    showLoading(false); // Hide progress
+                    if (result > 0) {
+                        Toast.makeText(RegisterActivity.this, "Registration successful", Toast.LENGTH_SHORT).show();
+                        startActivity(new Intent(RegisterActivity.this, LoginActivity.class));
+                        finish();
+                    } else if (result == -2) { // Specific code for duplicate username
+                        Toast.makeText(RegisterActivity.this, "Registration failed: Username already exists", Toast.LENGTH_SHORT).show();
+                    } else { // General failure (result == -1 or other)
+                        Toast.makeText(RegisterActivity.this, "Registration failed (Error code: " + result + ")", Toast.LENGTH_SHORT).show();
+                    }
                 });
             }
         });
@@ -27,13 +27,10 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.security.PublicKey;
 import java.util.Collections;
-import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.Executor;
 
 public class ScanResultActivity extends AppCompatActivity {
@@ -210,18 +207,26 @@ public class ScanResultActivity extends AppCompatActivity {
         tvPaymentInfoLabel.setVisibility(View.VISIBLE);
         tvPaymentInfoText.setVisibility(View.VISIBLE);
 
+        // Binary payloads carry the signed bytes; older JSON payloads the signed block and a Base64 signature
+        byte[] signedBytes = intent.getByteArrayExtra(QRScannerActivity.EXTRA_SIGNED_BYTES);
+        byte[] signatureBytes = intent.getByteArrayExtra(QRScannerActivity.EXTRA_SIGNATURE_BYTES);
+        boolean binaryPayload = signedBytes != null && signatureBytes != null;
         String signedDataBlockStr = intent.getStringExtra(QRScannerActivity.EXTRA_SIGNED_DATA_BLOCK);
         String signatureBase64 = intent.getStringExtra(QRScannerActivity.EXTRA_SIGNATURE);
         String payeeUsername = intent.getStringExtra(QRScannerActivity.EXTRA_PAYEE_USERNAME);
         String amount = intent.getStringExtra(QRScannerActivity.EXTRA_AMOUNT);
         String currency = intent.getStringExtra(QRScannerActivity.EXTRA_CURRENCY);
+        String signatureAlgorithm = intent.getStringExtra(QRScannerActivity.EXTRA_SIGNATURE_ALGORITHM);
+        if (signatureAlgorithm == null) {
+            signatureAlgorithm = SecurityUtils.SIGNATURE_ALGORITHM; // Payloads without the field carry DER
+        }
 
         String paymentInfo = "Payee: " + (payeeUsername != null ? payeeUsername : "N/A") +
                 "\nAmount: " + (amount != null ? amount : "N/A") +
                 " " + (currency != null ? currency : "");
         tvPaymentInfoText.setText(paymentInfo);
 
-        if (signedDataBlockStr == null || signatureBase64 == null || payeeUsername == null) {
+        if ((!binaryPayload && (signedDataBlockStr == null || signatureBase64 == null)) || payeeUsername == null) {
             Log.e(TAG, "Missing data for signed payment verification.");
             updateOverallStatusUI(false, "Error: Incomplete Signed Payment Data", "Could not verify payment details.");
             tvSignatureStatusText.setText("Error: Incomplete Data");
@@ -229,13 +234,16 @@ public class ScanResultActivity extends AppCompatActivity {
             signatureVerified = false;
         } else {
             try {
-                JSONObject dataToSignJson = new JSONObject(signedDataBlockStr);
-                String canonicalDataToSign = createCanonicalString(dataToSignJson); // Use the same method as in GenerateQrActivity
+                String canonicalDataToSign = null;
+                if (!binaryPayload) {
+                    JSONObject dataToSignJson = new JSONObject(signedDataBlockStr);
+                    canonicalDataToSign = PaymentPayloads.canonicalize(dataToSignJson);
 
-                if (canonicalDataToSign == null) {
-                    throw new Exception("Failed to create canonical string for verification.");
+                    if (canonicalDataToSign == null) {
+                        throw new Exception("Failed to create canonical string for verification.");
+                    }
+                    Log.d(TAG, "Canonical data for verification: " + canonicalDataToSign);
                 }
-                Log.d(TAG, "Canonical data for verification: " + canonicalDataToSign);
 
                 PublicKey payeePublicKey = UserKeyPairManager.getPublicKeyForPayee(this, payeeUsername);
 
@@ -246,7 +254,12 @@ public class ScanResultActivity extends AppCompatActivity {
                     tvSignatureStatusText.setTextColor(ContextCompat.getColor(this, android.R.color.holo_red_dark));
                     signatureVerified = false;
                 } else {
-                    signatureVerified = SecurityUtils.verifySignature(canonicalDataToSign, signatureBase64, payeePublicKey);
+                    if (binaryPayload) {
+                        signatureVerified = SecurityUtils.verifySignature(signedBytes, 0, signedBytes.length,
+                                signatureBytes, 0, signatureBytes.length, payeePublicKey, signatureAlgorithm);
+                    } else {
+                        signatureVerified = SecurityUtils.verifySignature(canonicalDataToSign, signatureBase64, payeePublicKey, signatureAlgorithm);
+                    }
                     if (signatureVerified) {
                         Log.i(TAG, "Signature VERIFIED for payee: " + payeeUsername);
                         updateOverallStatusUI(true, "Payment QR Verified", paymentInfo); // Show payment info in main details
@@ -311,7 +324,7 @@ public class ScanResultActivity extends AppCompatActivity {
         Content prompt = new Content.Builder()
                 .addText("Analyze the trustworthiness of this URL for a secure payment app user. Is it safe, potentially risky, or malicious? Here is an example of a safe Kaspi QR Payment link: https://pay.kaspi.kz/pay/zdf7v35x Provide a very brief explanation (1-2 sentences max). URL: " + url)
                 .build();
-        Executor backgroundExecutor = appExecutors.diskIO(); // Use your AppExecutors
+        Executor backgroundExecutor = appExecutors.networkIO(); // Use your AppExecutors
         ListenableFuture<GenerateContentResponse> future = geminiModel.generateContent(prompt);
 
         Futures.addCallback(future, new FutureCallback<GenerateContentResponse>() {
@@ -437,43 +450,4 @@ public class ScanResultActivity extends AppCompatActivity {
         }
     }
 
-    /**
-     * Creates a canonical string representation of a JSONObject for signing/verification.
-     * Sorts keys alphabetically and concatenates key=value pairs with '&'.
-     * This MUST be identical to the method used in GenerateQrActivity.
-     */
-    private String createCanonicalString(JSONObject json) {
-        if (json == null) return null;
-        try {
-            Map<String, String> sortedMap = new TreeMap<>();
-            java.util.Iterator<String> keys = json.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                // Ensure values are strings; adjust if other types are directly in dataToSign
-                sortedMap.put(key, json.getString(key));
-            }
-            StringBuilder sb = new StringBuilder();
-            boolean first = true;
-            for (Map.Entry<String, String> entry : sortedMap.entrySet()) {
-                if (!first) {
-                    sb.append("&");
-                }
-                // Basic URL encoding might be needed if values can contain '&' or '='
-                // For simplicity, assuming values are simple for now.
-                // sb.append(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8.name()))
-                //   .append("=")
-                //   .append(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8.name()));
-                sb.append(entry.getKey()).append("=").append(entry.getValue());
-                first = false;
-            }
-            return sb.toString();
-        } catch (JSONException e) {
-            Log.e(TAG, "Could not create canonical string from JSON for verification", e);
-            return null;
-        }
-        // catch (UnsupportedEncodingException e) { // If using URLEncoder
-        //     Log.e(TAG, "UTF-8 not supported for canonical string URLEncoding?", e);
-        //     return null;
-        // }
-    }
 }
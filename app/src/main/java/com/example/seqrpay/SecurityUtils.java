@@ -6,76 +6,195 @@ import android.security.keystore.KeyProperties;
 import android.util.Base64;
 import android.util.Log;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.spec.ECGenParameterSpec;
-import java.security.spec.InvalidKeySpecException; // For PBKDF2
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 import java.security.spec.KeySpec; // For PBKDF2
-import java.security.NoSuchAlgorithmException; // For PBKDF2 & KeyFactory
 import java.security.KeyFactory; // For decoding public key
 import java.security.spec.X509EncodedKeySpec; // For decoding public key
 
+import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory; // For PBKDF2
 import javax.crypto.spec.PBEKeySpec; // For PBKDF2
 import javax.crypto.Cipher; // Keep if needed for other encryption later
 import javax.crypto.spec.SecretKeySpec; // Keep if needed for other encryption later
 import javax.crypto.spec.GCMParameterSpec; // Keep if needed for other encryption later
-import java.security.SecureRandom; // For salt and AES IV
 
 public class SecurityUtils {
 
     private static final String TAG = "SecurityUtils";
     // Constants for Password-Based Key Derivation
-    private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA256";
+    static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA256";
     private static final int SALT_BYTE_SIZE = 16;
     private static final int HASH_BYTE_SIZE = 32; // Corresponds to SHA-256 output size
-    private static final int PBKDF2_ITERATIONS = 10000;
+    // Cost of every hash stored before per-user parameters existed (users rows default to it)
+    static final int LEGACY_PBKDF2_ITERATIONS = 10000;
+    // Calibration bounds: never cheaper than the legacy cost, never so slow that login stalls
+    static final int MIN_PBKDF2_ITERATIONS = 10000;
+    static final int MAX_PBKDF2_ITERATIONS = 600000;
+    // Time one password hash should take on this device
+    private static final long TARGET_HASH_MILLIS = 250;
+    private static final int CALIBRATION_PROBE_ITERATIONS = 5000;
+    private static final int CALIBRATION_ROUNDS = 3;
+    private static volatile int calibratedPbkdf2Iterations; // 0 until calibrated
 
     // Constants for AES Encryption (if used for other purposes)
-    private static final String AES_ALGORITHM = "AES/GCM/NoPadding";
+    static final String AES_ALGORITHM = "AES/GCM/NoPadding";
     private static final int GCM_TAG_LENGTH = 128; // bits
     private static final int GCM_IV_LENGTH = 12; // bytes
+    // Bytes encrypt() adds to the plaintext: the IV in front, the GCM tag at the end
+    public static final int ENCRYPTION_OVERHEAD = GCM_IV_LENGTH + GCM_TAG_LENGTH / 8;
 
     // --- NEW: Constants for Digital Signatures ---
     private static final String ANDROID_KEYSTORE_PROVIDER = "AndroidKeyStore";
     private static final String EC_KEY_ALGORITHM = KeyProperties.KEY_ALGORITHM_EC; // Elliptic Curve
     public static final String SIGNATURE_ALGORITHM = "SHA256withECDSA"; // Algorithm for signing
+    // Same signature as r || s, 64 bytes (IEEE P1363). Named as in the JDK; Android's providers
+    // lack it, so signData/verifySignature convert from/to DER via SignatureFormats.
+    public static final String SIGNATURE_ALGORITHM_P1363 = "SHA256withECDSAinP1363Format";
+    // Largest DER-encoded P-256 ECDSA signature; size of a buffer for the sign-into variant
+    public static final int MAX_SIGNATURE_LENGTH = 72;
     private static final String EC_CURVE_SPEC = "secp256r1"; // NIST P-256 curve, widely supported
 
+    // Keystore handles by alias. Loading AndroidKeyStore and reading an entry are IPC round-trips,
+    // and the handles stay valid until the key is regenerated or deleted.
+    private static final ConcurrentHashMap<String, KeyHandles> KEY_HANDLES = new ConcurrentHashMap<>();
+    private static volatile KeyStore androidKeyStore;
+
     /**
      * Generates a secure random salt.
      * @return byte array of the salt.
      */
     public static byte[] generateSalt() {
-        SecureRandom random = new SecureRandom();
         byte[] salt = new byte[SALT_BYTE_SIZE];
-        random.nextBytes(salt);
+        CryptoContext.RANDOM.nextBytes(salt);
         return salt;
     }
 
     /**
-     * Hashes a password using PBKDF2 with HmacSHA256.
+     * Hashes a password using PBKDF2 with HmacSHA256 at the legacy iteration count.
      * @param password The password to hash.
      * @param salt The salt to use for hashing.
      * @return Base64 encoded string of the hashed password, or null on error.
      */
     public static String hashPassword(final String password, final byte[] salt) {
+        return hashPassword(password, salt, PBKDF2_ALGORITHM, LEGACY_PBKDF2_ITERATIONS);
+    }
+
+    /**
+     * Hashes a password with the given PBKDF2 variant and cost, as stored for each user.
+     * @param password The password to hash.
+     * @param salt The salt to use for hashing.
+     * @param algorithm SecretKeyFactory algorithm, e.g. {@link #PBKDF2_ALGORITHM}.
+     * @param iterations PBKDF2 iteration count.
+     * @return Base64 encoded string of the hashed password, or null on error.
+     */
+    public static String hashPassword(final String password, final byte[] salt, String algorithm, int iterations) {
         try {
-            KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, PBKDF2_ITERATIONS, HASH_BYTE_SIZE * 8);
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
-            byte[] hash = factory.generateSecret(spec).getEncoded();
+            byte[] hash = deriveKey(password, salt, algorithm, iterations);
             return Base64.encodeToString(hash, Base64.NO_WRAP);
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
             Log.e(TAG, "Error hashing password", e);
             return null;
         }
     }
 
+    /**
+     * Checks a password against a stored hash in constant time (MessageDigest.isEqual), so the
+     * time taken does not reveal how many leading bytes matched.
+     * @param saltBase64 Stored salt, Base64 (NO_WRAP).
+     * @param hashBase64 Stored hash, Base64 (NO_WRAP).
+     * @return true if the password produces the stored hash.
+     */
+    public static boolean verifyPassword(String password, String saltBase64, String hashBase64,
+                                         String algorithm, int iterations) {
+        try {
+            byte[] salt = Base64.decode(saltBase64, Base64.NO_WRAP);
+            byte[] expected = Base64.decode(hashBase64, Base64.NO_WRAP);
+            byte[] actual = deriveKey(password, salt, algorithm, iterations);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Error verifying password", e);
+            return false;
+        }
+    }
+
+    private static byte[] deriveKey(String password, byte[] salt, String algorithm, int iterations)
+            throws GeneralSecurityException {
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BYTE_SIZE * 8);
+        SecretKeyFactory factory = PBKDF2_ALGORITHM.equals(algorithm)
+                ? CryptoContext.get().pbkdf2()
+                : SecretKeyFactory.getInstance(algorithm);
+        return factory.generateSecret(spec).getEncoded();
+    }
+
+    /**
+     * PBKDF2 iteration count that takes about TARGET_HASH_MILLIS on this device.
+     * Measured on first use (a few short probe hashes) and remembered for the life of the process,
+     * so call it from a background thread.
+     */
+    public static int getCalibratedPbkdf2Iterations() {
+        int iterations = calibratedPbkdf2Iterations;
+        if (iterations == 0) {
+            synchronized (SecurityUtils.class) {
+                iterations = calibratedPbkdf2Iterations;
+                if (iterations == 0) {
+                    iterations = calibratePbkdf2Iterations(TARGET_HASH_MILLIS);
+                    calibratedPbkdf2Iterations = iterations;
+                }
+            }
+        }
+        return iterations;
+    }
+
+    // Scales the fastest of a few probe hashes up to targetMillis, clamped and rounded to 1000
+    static int calibratePbkdf2Iterations(long targetMillis) {
+        byte[] salt = generateSalt();
+        try {
+            deriveKey("calibration", salt, PBKDF2_ALGORITHM, CALIBRATION_PROBE_ITERATIONS); // Warm-up
+            long fastestNanos = Long.MAX_VALUE;
+            for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+                long start = System.nanoTime();
+                deriveKey("calibration", salt, PBKDF2_ALGORITHM, CALIBRATION_PROBE_ITERATIONS);
+                fastestNanos = Math.min(fastestNanos, System.nanoTime() - start);
+            }
+            long iterations = CALIBRATION_PROBE_ITERATIONS * targetMillis * 1000000L / Math.max(1, fastestNanos);
+            iterations = Math.max(MIN_PBKDF2_ITERATIONS, Math.min(MAX_PBKDF2_ITERATIONS, iterations));
+            int rounded = (int) (iterations / 1000 * 1000);
+            Log.i(TAG, "Calibrated PBKDF2 to " + rounded + " iterations ("
+                    + (fastestNanos / 1000) + " us per " + CALIBRATION_PROBE_ITERATIONS + ")");
+            return rounded;
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "PBKDF2 calibration failed, using the minimum cost", e);
+            return MIN_PBKDF2_ITERATIONS;
+        }
+    }
+
+    /**
+     * Whether a stored hash should be replaced after a successful login: a different algorithm,
+     * or a cost outside half to twice what this device is calibrated for (too weak, or too slow).
+     */
+    public static boolean needsRehash(String algorithm, int iterations) {
+        if (!PBKDF2_ALGORITHM.equals(algorithm)) {
+            return true;
+        }
+        int target = getCalibratedPbkdf2Iterations();
+        return iterations < target / 2 || iterations > target * 2;
+    }
+
     /**
      * Encrypts data using AES/GCM/NoPadding.
      * Requires a Base64 encoded key.
@@ -85,25 +204,11 @@ public class SecurityUtils {
      */
     public static String encrypt(String dataToEncrypt, String base64Key) {
         try {
-            byte[] keyBytes = Base64.decode(base64Key, Base64.NO_WRAP);
-            SecretKeySpec key = new SecretKeySpec(keyBytes, "AES");
-
-            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
-            byte[] iv = new byte[GCM_IV_LENGTH];
-            SecureRandom random = new SecureRandom();
-            random.nextBytes(iv);
-
-            GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, key, gcmParameterSpec);
-
-            byte[] encryptedData = cipher.doFinal(dataToEncrypt.getBytes(StandardCharsets.UTF_8));
-
-            // Combine IV and encrypted data for storage/transmission
-            byte[] combinedIvAndCiphertext = new byte[iv.length + encryptedData.length];
-            System.arraycopy(iv, 0, combinedIvAndCiphertext, 0, iv.length);
-            System.arraycopy(encryptedData, 0, combinedIvAndCiphertext, iv.length, encryptedData.length);
-
-            return Base64.encodeToString(combinedIvAndCiphertext, Base64.NO_WRAP);
+            SecretKey key = aesKey(Base64.decode(base64Key, Base64.NO_WRAP));
+            byte[] plain = dataToEncrypt.getBytes(StandardCharsets.UTF_8);
+            byte[] combinedIvAndCiphertext = encrypt(plain, 0, plain.length, key);
+            return combinedIvAndCiphertext != null
+                    ? Base64.encodeToString(combinedIvAndCiphertext, Base64.NO_WRAP) : null;
         } catch (Exception e) {
             Log.e(TAG, "AES Encryption error", e);
             return null;
@@ -119,29 +224,154 @@ public class SecurityUtils {
      */
     public static String decrypt(String base64EncryptedData, String base64Key) {
         try {
-            byte[] keyBytes = Base64.decode(base64Key, Base64.NO_WRAP);
-            SecretKeySpec key = new SecretKeySpec(keyBytes, "AES");
-
+            SecretKey key = aesKey(Base64.decode(base64Key, Base64.NO_WRAP));
             byte[] combinedIvAndCiphertext = Base64.decode(base64EncryptedData, Base64.NO_WRAP);
+            byte[] decryptedData = decrypt(combinedIvAndCiphertext, 0, combinedIvAndCiphertext.length, key);
+            return decryptedData != null ? new String(decryptedData, StandardCharsets.UTF_8) : null;
+        } catch (Exception e) {
+            Log.e(TAG, "AES Decryption error", e);
+            return null;
+        }
+    }
+
+    // --- Byte-level AES-GCM: the same [IV + Ciphertext] layout, without Base64 or Strings ---
+
+    /**
+     * Wraps raw AES key bytes. Build it once and pass it to the byte-level calls, instead of
+     * decoding a Base64 key per call.
+     */
+    public static SecretKey aesKey(byte[] keyBytes) {
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+
+    public static SecretKey aesKey(byte[] keyBytes, int offset, int length) {
+        return new SecretKeySpec(keyBytes, offset, length, "AES");
+    }
+
+    // Size of encrypt()'s output for plaintextLength bytes
+    public static int encryptedLength(int plaintextLength) {
+        return plaintextLength + ENCRYPTION_OVERHEAD;
+    }
+
+    /**
+     * Encrypts data[offset, offset + length).
+     * @return [IV + Ciphertext], or null on error.
+     */
+    public static byte[] encrypt(byte[] data, int offset, int length, SecretKey key) {
+        byte[] out = new byte[encryptedLength(length)];
+        return encrypt(data, offset, length, key, out, 0) >= 0 ? out : null;
+    }
+
+    /**
+     * Encrypts data[offset, offset + length) into out at outOffset, which needs
+     * encryptedLength(length) bytes of room. out may be the input array if the ranges do not overlap.
+     * @return Number of bytes written, or -1 on error.
+     */
+    public static int encrypt(byte[] data, int offset, int length, SecretKey key, byte[] out, int outOffset) {
+        try {
+            Cipher cipher = CryptoContext.get().aesGcm();
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            CryptoContext.RANDOM.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            System.arraycopy(iv, 0, out, outOffset, GCM_IV_LENGTH);
+            return GCM_IV_LENGTH + cipher.doFinal(data, offset, length, out, outOffset + GCM_IV_LENGTH);
+        } catch (Exception e) {
+            Log.e(TAG, "AES Encryption error", e);
+            return -1;
+        }
+    }
 
-            // Extract IV and Ciphertext
+    /**
+     * Encrypts the remaining bytes of data into out, advancing both positions.
+     * out needs encryptedLength(data.remaining()) bytes remaining; either buffer may be direct.
+     * @return Number of bytes written, or -1 on error (positions are then unspecified).
+     */
+    public static int encrypt(ByteBuffer data, SecretKey key, ByteBuffer out) {
+        try {
+            Cipher cipher = CryptoContext.get().aesGcm();
             byte[] iv = new byte[GCM_IV_LENGTH];
-            byte[] ciphertext = new byte[combinedIvAndCiphertext.length - GCM_IV_LENGTH];
-            System.arraycopy(combinedIvAndCiphertext, 0, iv, 0, iv.length);
-            System.arraycopy(combinedIvAndCiphertext, iv.length, ciphertext, 0, ciphertext.length);
+            CryptoContext.RANDOM.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            out.put(iv);
+            return GCM_IV_LENGTH + cipher.doFinal(data, out);
+        } catch (Exception e) {
+            Log.e(TAG, "AES Encryption error", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Decrypts [IV + Ciphertext] from sealed[offset, offset + length).
+     * @return The plaintext, or null on error or failed authentication.
+     */
+    public static byte[] decrypt(byte[] sealed, int offset, int length, SecretKey key) {
+        if (length < ENCRYPTION_OVERHEAD) {
+            Log.e(TAG, "AES Decryption error: input shorter than IV and tag");
+            return null;
+        }
+        byte[] out = new byte[length - ENCRYPTION_OVERHEAD];
+        return decrypt(sealed, offset, length, key, out, 0) >= 0 ? out : null;
+    }
 
-            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
-            GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-            cipher.init(Cipher.DECRYPT_MODE, key, gcmParameterSpec);
+    /**
+     * Decrypts [IV + Ciphertext] from sealed[offset, offset + length) into out at outOffset, which
+     * needs length - ENCRYPTION_OVERHEAD bytes of room.
+     * @return Number of plaintext bytes written, or -1 on error or failed authentication.
+     */
+    public static int decrypt(byte[] sealed, int offset, int length, SecretKey key, byte[] out, int outOffset) {
+        try {
+            Cipher cipher = CryptoContext.get().aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, sealed, offset, GCM_IV_LENGTH));
+            return cipher.doFinal(sealed, offset + GCM_IV_LENGTH, length - GCM_IV_LENGTH, out, outOffset);
+        } catch (Exception e) {
+            Log.e(TAG, "AES Decryption error", e);
+            return -1;
+        }
+    }
 
-            byte[] decryptedData = cipher.doFinal(ciphertext);
-            return new String(decryptedData, StandardCharsets.UTF_8);
+    /**
+     * Decrypts the remaining [IV + Ciphertext] bytes of sealed into out, advancing both positions.
+     * @return Number of plaintext bytes written, or -1 on error or failed authentication.
+     */
+    public static int decrypt(ByteBuffer sealed, SecretKey key, ByteBuffer out) {
+        try {
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            sealed.get(iv);
+            Cipher cipher = CryptoContext.get().aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            return cipher.doFinal(sealed, out);
         } catch (Exception e) {
             Log.e(TAG, "AES Decryption error", e);
-            return null;
+            return -1;
         }
     }
 
+    /**
+     * Stream form of encrypt() for large data (backups, exports): everything written to the
+     * returned stream is encrypted into out as chunked AES-GCM (see {@link AesGcmStreams}), using
+     * constant memory. Call finish() or close() on it at the end.
+     * @param out Destination of the encrypted bytes.
+     * @param base64Key The Base64 encoded AES key.
+     * @return The encrypting stream.
+     * @throws IOException if the key is invalid or writing the header fails.
+     */
+    public static AesGcmStreams.EncryptingOutputStream encryptStream(OutputStream out, String base64Key)
+            throws IOException {
+        return AesGcmStreams.newEncryptingStream(out, Base64.decode(base64Key, Base64.NO_WRAP));
+    }
+
+    /**
+     * Stream form of decrypt(): reads data written through {@link #encryptStream}. Reads throw
+     * IOException if the data was tampered with or cut short.
+     * @param in Source of the encrypted bytes.
+     * @param base64Key The Base64 encoded AES key.
+     * @return A stream of the decrypted bytes.
+     * @throws IOException if the key is invalid or the header cannot be read.
+     */
+    public static InputStream decryptStream(InputStream in, String base64Key) throws IOException {
+        return AesGcmStreams.newDecryptingStream(in, Base64.decode(base64Key, Base64.NO_WRAP));
+    }
+
     // --- NEW METHODS FOR DIGITAL SIGNATURES ---
 
     /**
@@ -169,70 +399,128 @@ public class SecurityUtils {
 
             keyPairGenerator.initialize(builder.build());
             Log.i(TAG, "Generating EC KeyPair with alias: " + alias);
-            return keyPairGenerator.generateKeyPair();
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+            // The new pair replaces whatever was cached for the alias
+            KEY_HANDLES.put(alias, new KeyHandles(keyPair.getPrivate(), keyPair.getPublic()));
+            return keyPair;
         } catch (Exception e) { // Catch a broader range of exceptions for Keystore operations
             Log.e(TAG, "Failed to generate EC KeyPair in Keystore for alias " + alias, e);
+            invalidateKeyHandles(alias);
             return null;
         }
     }
 
     /**
      * Retrieves the PrivateKey from the Android Keystore.
+     * Served from the process-wide handle cache after the first lookup of an alias.
      *
      * @param alias The alias of the key pair.
      * @return The PrivateKey, or null if the alias doesn't exist or it's not a private key.
      */
     public static PrivateKey getPrivateKeyFromKeystore(String alias) {
-        try {
-            KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE_PROVIDER);
-            keyStore.load(null); // Load the Keystore (no password needed for AndroidKeyStore)
-
-            KeyStore.Entry entry = keyStore.getEntry(alias, null);
-            if (entry == null) {
-                Log.w(TAG, "No key found under alias: " + alias);
-                return null;
-            }
-            if (!(entry instanceof KeyStore.PrivateKeyEntry)) {
-                Log.w(TAG, "Not a private key entry under alias: " + alias);
-                return null;
-            }
-            Log.i(TAG, "Retrieved PrivateKey for alias: " + alias);
-            return ((KeyStore.PrivateKeyEntry) entry).getPrivateKey();
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to retrieve PrivateKey from Keystore for alias " + alias, e);
-            return null;
-        }
+        KeyHandles handles = getKeyHandles(alias);
+        return handles != null ? handles.privateKey : null;
     }
 
     /**
      * Retrieves the PublicKey from the Android Keystore (from the key pair's certificate).
+     * Served from the process-wide handle cache after the first lookup of an alias.
      *
      * @param alias The alias of the key pair.
      * @return The PublicKey, or null if the alias doesn't exist or there's no certificate.
      */
     public static PublicKey getPublicKeyFromKeystore(String alias) {
+        KeyHandles handles = getKeyHandles(alias);
+        return handles != null ? handles.publicKey : null;
+    }
+
+    /**
+     * Whether a complete key pair (private key and certificate) exists under the alias.
+     * Always asks the keystore whether the alias exists, so a key wiped by the system (e.g. a lock
+     * screen reset) is noticed; its cached handles are dropped then. Entries are read only once.
+     */
+    public static boolean hasKeyPair(String alias) {
         try {
-            KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE_PROVIDER);
-            keyStore.load(null);
+            if (!androidKeyStore().containsAlias(alias)) {
+                Log.w(TAG, "No key found under alias: " + alias);
+                invalidateKeyHandles(alias);
+                return false;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to check Keystore for alias " + alias, e);
+            invalidateKeyHandles(alias);
+            return false;
+        }
+        return getKeyHandles(alias) != null;
+    }
 
+    /**
+     * Drops the cached handles of an alias, e.g. after its key was deleted outside this class.
+     * Regenerating through generateECKeyPairInKeystore replaces the handles by itself.
+     */
+    public static void invalidateKeyHandles(String alias) {
+        KEY_HANDLES.remove(alias);
+    }
+
+    // Cached handles of one keystore entry, or null if there is no usable entry (not cached)
+    private static KeyHandles getKeyHandles(String alias) {
+        KeyHandles handles = KEY_HANDLES.get(alias);
+        if (handles != null) {
+            return handles;
+        }
+        try {
+            KeyStore keyStore = androidKeyStore();
             KeyStore.Entry entry = keyStore.getEntry(alias, null);
             if (entry == null) {
-                Log.w(TAG, "No key found under alias (for public key): " + alias);
+                Log.w(TAG, "No key found under alias: " + alias);
+                return null;
+            }
+            if (!(entry instanceof KeyStore.PrivateKeyEntry)) {
+                Log.w(TAG, "Not a private key entry under alias: " + alias);
                 return null;
             }
-            // For public key, we typically get it from the certificate associated with the private key entry
-            if (keyStore.getCertificate(alias) == null) {
-                 Log.w(TAG, "No certificate found for alias (for public key): " + alias);
+            KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) entry;
+            // The entry carries its certificate, so no separate getCertificate() round-trip
+            if (privateKeyEntry.getCertificate() == null) {
+                Log.w(TAG, "No certificate found for alias: " + alias);
                 return null;
             }
-            Log.i(TAG, "Retrieved PublicKey for alias: " + alias);
-            return keyStore.getCertificate(alias).getPublicKey();
+            handles = new KeyHandles(privateKeyEntry.getPrivateKey(), privateKeyEntry.getCertificate().getPublicKey());
+            KeyHandles raced = KEY_HANDLES.putIfAbsent(alias, handles);
+            Log.i(TAG, "Loaded key handles for alias: " + alias);
+            return raced != null ? raced : handles;
         } catch (Exception e) {
-            Log.e(TAG, "Failed to retrieve PublicKey from Keystore for alias " + alias, e);
+            Log.e(TAG, "Failed to load key from Keystore for alias " + alias, e);
             return null;
         }
     }
 
+    // Loaded once per process; entries are still read live from the keystore service
+    private static KeyStore androidKeyStore() throws Exception {
+        KeyStore keyStore = androidKeyStore;
+        if (keyStore == null) {
+            synchronized (SecurityUtils.class) {
+                keyStore = androidKeyStore;
+                if (keyStore == null) {
+                    keyStore = KeyStore.getInstance(ANDROID_KEYSTORE_PROVIDER);
+                    keyStore.load(null); // No password needed for AndroidKeyStore
+                    androidKeyStore = keyStore;
+                }
+            }
+        }
+        return keyStore;
+    }
+
+    private static final class KeyHandles {
+        final PrivateKey privateKey;
+        final PublicKey publicKey;
+
+        KeyHandles(PrivateKey privateKey, PublicKey publicKey) {
+            this.privateKey = privateKey;
+            this.publicKey = publicKey;
+        }
+    }
+
     /**
      * Signs data using the provided PrivateKey (typically retrieved from Keystore).
      * Uses SHA256withECDSA algorithm.
@@ -246,13 +534,97 @@ public class SecurityUtils {
             Log.e(TAG, "Private key or data to sign is null.");
             return null;
         }
+        byte[] data = dataToSign.getBytes(StandardCharsets.UTF_8);
+        byte[] signatureBytes = signData(data, 0, data.length, privateKey);
+        // URL_SAFE is good for QR codes and web transmission. NO_WRAP avoids newlines.
+        return signatureBytes != null ? Base64.encodeToString(signatureBytes, Base64.URL_SAFE | Base64.NO_WRAP) : null;
+    }
+
+    /**
+     * Signs data and encodes the signature in the given format.
+     *
+     * @param dataToSign The string data to be signed.
+     * @param privateKey The PrivateKey to use for signing.
+     * @param signatureAlgorithm {@link #SIGNATURE_ALGORITHM} (DER) or {@link #SIGNATURE_ALGORITHM_P1363} (r || s).
+     * @return Base64 URL-safe encoded signature string, or null on error or an unknown algorithm.
+     */
+    public static String signData(String dataToSign, PrivateKey privateKey, String signatureAlgorithm) {
+        if (privateKey == null || dataToSign == null) {
+            Log.e(TAG, "Private key or data to sign is null.");
+            return null;
+        }
+        byte[] data = dataToSign.getBytes(StandardCharsets.UTF_8);
+        byte[] signatureBytes = signData(data, 0, data.length, privateKey, signatureAlgorithm);
+        return signatureBytes != null ? Base64.encodeToString(signatureBytes, Base64.URL_SAFE | Base64.NO_WRAP) : null;
+    }
+
+    /**
+     * Signs data[offset, offset + length) and encodes the signature in the given format.
+     * @param signatureAlgorithm {@link #SIGNATURE_ALGORITHM} (DER) or {@link #SIGNATURE_ALGORITHM_P1363} (r || s).
+     * @return The encoded signature, or null on error or an unknown algorithm.
+     */
+    public static byte[] signData(byte[] data, int offset, int length, PrivateKey privateKey, String signatureAlgorithm) {
+        if (!isSupportedSignatureAlgorithm(signatureAlgorithm)) {
+            Log.e(TAG, "Unsupported signature algorithm: " + signatureAlgorithm);
+            return null;
+        }
+        byte[] der = signData(data, offset, length, privateKey);
+        if (der == null || SIGNATURE_ALGORITHM.equals(signatureAlgorithm)) {
+            return der;
+        }
+        try {
+            return SignatureFormats.derToP1363(der, SignatureFormats.P256_FIELD_BYTES);
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Error converting signature to P1363", e);
+            return null;
+        }
+    }
+
+    // Whether signData/verifySignature accept this signatureAlgorithm value
+    public static boolean isSupportedSignatureAlgorithm(String signatureAlgorithm) {
+        return SIGNATURE_ALGORITHM.equals(signatureAlgorithm) || SIGNATURE_ALGORITHM_P1363.equals(signatureAlgorithm);
+    }
+
+    /**
+     * Signs data[offset, offset + length).
+     * @return The DER-encoded signature, or null on error.
+     */
+    public static byte[] signData(byte[] data, int offset, int length, PrivateKey privateKey) {
+        try {
+            Signature signature = CryptoContext.get().signer(privateKey);
+            signature.update(data, offset, length);
+            return signature.sign();
+        } catch (Exception e) {
+            Log.e(TAG, "Error signing data", e);
+            return null;
+        }
+    }
+
+    /**
+     * Signs data[offset, offset + length) into out at outOffset, which should have
+     * MAX_SIGNATURE_LENGTH bytes of room.
+     * @return Length of the DER-encoded signature written, or -1 on error.
+     */
+    public static int signData(byte[] data, int offset, int length, PrivateKey privateKey, byte[] out, int outOffset) {
+        try {
+            Signature signature = CryptoContext.get().signer(privateKey);
+            signature.update(data, offset, length);
+            return signature.sign(out, outOffset, out.length - outOffset);
+        } catch (Exception e) {
+            Log.e(TAG, "Error signing data", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Signs the remaining bytes of data, advancing its position. data may be a direct buffer.
+     * @return The DER-encoded signature, or null on error.
+     */
+    public static byte[] signData(ByteBuffer data, PrivateKey privateKey) {
         try {
-            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
-            signature.initSign(privateKey);
-            signature.update(dataToSign.getBytes(StandardCharsets.UTF_8));
-            byte[] signatureBytes = signature.sign();
-            // URL_SAFE is good for QR codes and web transmission. NO_WRAP avoids newlines.
-            return Base64.encodeToString(signatureBytes, Base64.URL_SAFE | Base64.NO_WRAP);
+            Signature signature = CryptoContext.get().signer(privateKey);
+            signature.update(data);
+            return signature.sign();
         } catch (Exception e) {
             Log.e(TAG, "Error signing data", e);
             return null;
@@ -273,12 +645,84 @@ public class SecurityUtils {
             Log.e(TAG, "Public key, original data, or signature is null for verification.");
             return false;
         }
+        byte[] signatureBytes;
         try {
-            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
-            signature.initVerify(publicKey);
-            signature.update(originalData.getBytes(StandardCharsets.UTF_8));
-            byte[] signatureBytes = Base64.decode(signatureBase64, Base64.URL_SAFE); // Use URL_SAFE for decoding
-            return signature.verify(signatureBytes);
+            signatureBytes = Base64.decode(signatureBase64, Base64.URL_SAFE); // Use URL_SAFE for decoding
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Error verifying signature - malformed Base64", e);
+            return false;
+        }
+        byte[] data = originalData.getBytes(StandardCharsets.UTF_8);
+        return verifySignature(data, 0, data.length, signatureBytes, 0, signatureBytes.length, publicKey);
+    }
+
+    /**
+     * Verifies a signature encoded in the given format, as named by a payload's signatureAlgorithm.
+     *
+     * @param originalData The original, unsigned data string (must be identical to what was signed).
+     * @param signatureBase64 The Base64 URL-safe encoded signature string to verify.
+     * @param publicKey The PublicKey to use for verification.
+     * @param signatureAlgorithm {@link #SIGNATURE_ALGORITHM} (DER) or {@link #SIGNATURE_ALGORITHM_P1363} (r || s).
+     * @return True if the signature is valid and matches the data; false otherwise or for an unknown algorithm.
+     */
+    public static boolean verifySignature(String originalData, String signatureBase64, PublicKey publicKey,
+                                          String signatureAlgorithm) {
+        if (publicKey == null || originalData == null || signatureBase64 == null) {
+            Log.e(TAG, "Public key, original data, or signature is null for verification.");
+            return false;
+        }
+        byte[] signatureBytes;
+        try {
+            signatureBytes = Base64.decode(signatureBase64, Base64.URL_SAFE);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Error verifying signature - malformed Base64", e);
+            return false;
+        }
+        byte[] data = originalData.getBytes(StandardCharsets.UTF_8);
+        return verifySignature(data, 0, data.length, signatureBytes, 0, signatureBytes.length, publicKey, signatureAlgorithm);
+    }
+
+    /**
+     * Verifies a signature in the given format over data[offset, offset + length).
+     * @param signatureAlgorithm {@link #SIGNATURE_ALGORITHM} (DER) or {@link #SIGNATURE_ALGORITHM_P1363} (r || s).
+     * @return True if the signature is valid and matches the data; false otherwise or for an unknown algorithm.
+     */
+    public static boolean verifySignature(byte[] data, int offset, int length,
+                                          byte[] signatureBytes, int signatureOffset, int signatureLength,
+                                          PublicKey publicKey, String signatureAlgorithm) {
+        if (SIGNATURE_ALGORITHM.equals(signatureAlgorithm)) {
+            return verifySignature(data, offset, length, signatureBytes, signatureOffset, signatureLength, publicKey);
+        }
+        if (!SIGNATURE_ALGORITHM_P1363.equals(signatureAlgorithm)) {
+            Log.e(TAG, "Unsupported signature algorithm: " + signatureAlgorithm);
+            return false;
+        }
+        if (signatureLength != SignatureFormats.P256_P1363_LENGTH) {
+            Log.e(TAG, "P1363 signature has the wrong length: " + signatureLength);
+            return false;
+        }
+        byte[] der;
+        try {
+            der = SignatureFormats.p1363ToDer(Arrays.copyOfRange(signatureBytes, signatureOffset,
+                    signatureOffset + signatureLength));
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Error decoding P1363 signature", e);
+            return false;
+        }
+        return verifySignature(data, offset, length, der, 0, der.length, publicKey);
+    }
+
+    /**
+     * Verifies a DER-encoded signature over data[offset, offset + length).
+     * @return True if the signature is valid and matches the data, false otherwise.
+     */
+    public static boolean verifySignature(byte[] data, int offset, int length,
+                                          byte[] signatureBytes, int signatureOffset, int signatureLength,
+                                          PublicKey publicKey) {
+        try {
+            Signature signature = CryptoContext.get().verifier(publicKey);
+            signature.update(data, offset, length);
+            return signature.verify(signatureBytes, signatureOffset, signatureLength);
         } catch (Exception e) {
             // This can happen for various reasons: malformed signature, wrong key, etc.
             Log.e(TAG, "Error verifying signature", e);
@@ -286,6 +730,30 @@ public class SecurityUtils {
         }
     }
 
+    /**
+     * Verifies the remaining bytes of signatureBytes (DER) over the remaining bytes of data,
+     * advancing both positions. Either buffer may be direct.
+     * @return True if the signature is valid and matches the data, false otherwise.
+     */
+    public static boolean verifySignature(ByteBuffer data, ByteBuffer signatureBytes, PublicKey publicKey) {
+        try {
+            Signature signature = CryptoContext.get().verifier(publicKey);
+            signature.update(data);
+            if (signatureBytes.hasArray()) {
+                int start = signatureBytes.arrayOffset() + signatureBytes.position();
+                int length = signatureBytes.remaining();
+                signatureBytes.position(signatureBytes.limit());
+                return signature.verify(signatureBytes.array(), start, length);
+            }
+            byte[] copy = new byte[signatureBytes.remaining()]; // At most MAX_SIGNATURE_LENGTH bytes
+            signatureBytes.get(copy);
+            return signature.verify(copy);
+        } catch (Exception e) {
+            Log.e(TAG, "Error verifying signature", e);
+            return false;
+        }
+    }
+
     /**
      * Encodes a PublicKey to a Base64 string (X.509 format).
      * Useful for storing or transmitting the public key.
@@ -304,17 +772,40 @@ public class SecurityUtils {
      */
     public static PublicKey decodePublicKey(String encodedPublicKey) {
         if (encodedPublicKey == null) return null;
+        byte[] publicKeyBytes;
         try {
-            byte[] publicKeyBytes = Base64.decode(encodedPublicKey, Base64.NO_WRAP);
-            KeyFactory keyFactory = KeyFactory.getInstance("EC"); // IMPORTANT: Must match the key algorithm (EC for ECDSA)
-            return keyFactory.generatePublic(new X509EncodedKeySpec(publicKeyBytes));
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-            Log.e(TAG, "Error decoding public key string", e);
-            return null;
+            publicKeyBytes = Base64.decode(encodedPublicKey, Base64.NO_WRAP);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Error decoding public key string - likely malformed Base64", e);
             return null;
         }
+        return decodePublicKey(publicKeyBytes, 0, publicKeyBytes.length);
     }
-}
 
+    /**
+     * Decodes an X.509-encoded EC public key from encoded[offset, offset + length).
+     * @return PublicKey object, or null on error.
+     */
+    public static PublicKey decodePublicKey(byte[] encoded, int offset, int length) {
+        try {
+            // X509EncodedKeySpec takes a whole array; copy only when given a slice
+            byte[] publicKeyBytes = offset == 0 && length == encoded.length
+                    ? encoded : Arrays.copyOfRange(encoded, offset, offset + length);
+            KeyFactory keyFactory = CryptoContext.get().ecKeyFactory(); // IMPORTANT: Must match the key algorithm (EC for ECDSA)
+            return keyFactory.generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+        } catch (GeneralSecurityException | RuntimeException e) {
+            Log.e(TAG, "Error decoding public key bytes", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes an X.509-encoded EC public key from the remaining bytes of encoded, advancing its position.
+     * @return PublicKey object, or null on error.
+     */
+    public static PublicKey decodePublicKey(ByteBuffer encoded) {
+        byte[] publicKeyBytes = new byte[encoded.remaining()];
+        encoded.get(publicKeyBytes);
+        return decodePublicKey(publicKeyBytes, 0, publicKeyBytes.length);
+    }
+}
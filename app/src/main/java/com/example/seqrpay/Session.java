@@ -0,0 +1,101 @@
+package com.example.seqrpay;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+/**
+ * The logged-in user, resolved once at login and shared by every activity.
+ *
+ * LoginActivity starts the session with the user id and username from
+ * {@link DatabaseHelper#authenticate(String, String)}. Both are also written to SharedPreferences,
+ * so after a process restart the first {@link #get(Context)} restores them with one prefs read;
+ * after that every lookup is an in-memory field read, with no prefs or users-table query.
+ */
+public class Session {
+    private static final String TAG = "Session";
+    private static final String KEY_LOGGED_IN_USER_ID = "loggedInUserId";
+
+    private static volatile Session current;
+    private static boolean restoreAttempted; // Guarded by Session.class
+
+    private final long userId;
+    private final String username;
+
+    private Session(long userId, String username) {
+        this.userId = userId;
+        this.username = username;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Starts a session after a successful login and persists it.
+     * Logging in as a different user drops the previous user's cached transactions.
+     */
+    public static synchronized void start(Context context, long userId, String username) {
+        Session previous = current != null ? current : restore(context);
+        if (previous == null || previous.userId != userId) {
+            DatabaseHelper.getInstance(context).clearRecentTransactionsCache();
+        }
+        current = new Session(userId, username);
+        restoreAttempted = true;
+        prefs(context).edit()
+                .putLong(KEY_LOGGED_IN_USER_ID, userId)
+                .putString(LoginActivity.KEY_LOGGED_IN_USERNAME, username)
+                .apply();
+        Log.i(TAG, "Session started for user " + userId);
+    }
+
+    /**
+     * The current session, restored from SharedPreferences on first use after a process restart.
+     * @return The session, or null if nobody is logged in.
+     */
+    public static Session get(Context context) {
+        Session session = current;
+        if (session != null) {
+            return session;
+        }
+        synchronized (Session.class) {
+            if (current == null && !restoreAttempted) {
+                current = restore(context);
+                restoreAttempted = true;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Ends the session (logout) and clears the persisted record and cached user data.
+     */
+    public static synchronized void end(Context context) {
+        current = null;
+        restoreAttempted = true;
+        DatabaseHelper.getInstance(context).clearRecentTransactionsCache();
+        prefs(context).edit()
+                .remove(KEY_LOGGED_IN_USER_ID)
+                .remove(LoginActivity.KEY_LOGGED_IN_USERNAME)
+                .apply();
+    }
+
+    private static Session restore(Context context) {
+        SharedPreferences prefs = prefs(context);
+        String username = prefs.getString(LoginActivity.KEY_LOGGED_IN_USERNAME, null);
+        long userId = prefs.getLong(KEY_LOGGED_IN_USER_ID, -1);
+        if (username == null || userId < 0) {
+            // Nothing persisted, or a login from before the id was stored: log in again
+            return null;
+        }
+        return new Session(userId, username);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(LoginActivity.SHARED_PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.seqrpay;
+
+import java.security.SignatureException;
+
+/**
+ * Conversion between the two encodings of an ECDSA signature (r, s).
+ *
+ * DER (what Signature.sign() returns for SHA256withECDSA) is SEQUENCE { INTEGER r, INTEGER s }:
+ * 70-72 bytes for P-256, varying with leading zeros and sign bytes. IEEE P1363 is r || s, each
+ * left-padded to the curve's field size: always 64 bytes for P-256, which makes QR payloads
+ * smaller. Android's providers do not offer the P1363 algorithm names, so SecurityUtils signs
+ * and verifies in DER and converts here.
+ *
+ * Pure Java, so it runs in local unit tests.
+ */
+public class SignatureFormats {
+
+    // Field size of secp256r1 in bytes; a P1363 signature is twice this
+    public static final int P256_FIELD_BYTES = 32;
+    public static final int P256_P1363_LENGTH = 2 * P256_FIELD_BYTES;
+
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_INTEGER = 0x02;
+
+    private SignatureFormats() {
+    }
+
+    /**
+     * DER SEQUENCE { r, s } to r || s.
+     * @param der The DER-encoded signature.
+     * @param fieldBytes Size of r and s in the output, e.g. {@link #P256_FIELD_BYTES}.
+     * @return 2 * fieldBytes bytes.
+     * @throws SignatureException if der is not a well-formed ECDSA signature or r or s is too large.
+     */
+    public static byte[] derToP1363(byte[] der, int fieldBytes) throws SignatureException {
+        int[] pos = {0};
+        if (der == null || der.length < 8 || (der[pos[0]++] & 0xff) != TAG_SEQUENCE) {
+            throw new SignatureException("Not a DER sequence");
+        }
+        int sequenceLength = readLength(der, pos);
+        if (pos[0] + sequenceLength != der.length) {
+            throw new SignatureException("DER sequence length does not match the signature");
+        }
+        byte[] out = new byte[2 * fieldBytes];
+        readInteger(der, pos, out, 0, fieldBytes);
+        readInteger(der, pos, out, fieldBytes, fieldBytes);
+        if (pos[0] != der.length) {
+            throw new SignatureException("Trailing bytes after DER signature");
+        }
+        return out;
+    }
+
+    /**
+     * r || s to DER SEQUENCE { r, s }.
+     * @param p1363 r and s of equal length, big-endian unsigned.
+     * @return The DER-encoded signature.
+     * @throws SignatureException if the input is empty or of odd length.
+     */
+    public static byte[] p1363ToDer(byte[] p1363) throws SignatureException {
+        if (p1363 == null || p1363.length == 0 || p1363.length % 2 != 0) {
+            throw new SignatureException("P1363 signature must be two equal halves");
+        }
+        int half = p1363.length / 2;
+        byte[] r = derInteger(p1363, 0, half);
+        byte[] s = derInteger(p1363, half, half);
+        int contentLength = r.length + s.length;
+        byte[] lengthBytes = encodeLength(contentLength);
+        byte[] der = new byte[1 + lengthBytes.length + contentLength];
+        der[0] = (byte) TAG_SEQUENCE;
+        System.arraycopy(lengthBytes, 0, der, 1, lengthBytes.length);
+        System.arraycopy(r, 0, der, 1 + lengthBytes.length, r.length);
+        System.arraycopy(s, 0, der, 1 + lengthBytes.length + r.length, s.length);
+        return der;
+    }
+
+    // Reads one DER INTEGER into out[offset, offset + fieldBytes), right-aligned
+    private static void readInteger(byte[] der, int[] pos, byte[] out, int offset, int fieldBytes)
+            throws SignatureException {
+        if (pos[0] >= der.length || (der[pos[0]++] & 0xff) != TAG_INTEGER) {
+            throw new SignatureException("Expected DER integer");
+        }
+        int length = readLength(der, pos);
+        if (length == 0 || pos[0] + length > der.length) {
+            throw new SignatureException("Bad DER integer length");
+        }
+        if ((der[pos[0]] & 0x80) != 0) {
+            throw new SignatureException("Negative DER integer");
+        }
+        int start = pos[0];
+        int end = start + length;
+        // Drop the sign byte and any other leading zeros
+        while (start < end - 1 && der[start] == 0) {
+            start++;
+        }
+        int significant = end - start;
+        if (significant > fieldBytes) {
+            throw new SignatureException("DER integer larger than the field size");
+        }
+        System.arraycopy(der, start, out, offset + fieldBytes - significant, significant);
+        pos[0] = end;
+    }
+
+    private static int readLength(byte[] der, int[] pos) throws SignatureException {
+        if (pos[0] >= der.length) {
+            throw new SignatureException("Truncated DER length");
+        }
+        int first = der[pos[0]++] & 0xff;
+        if (first < 0x80) {
+            return first;
+        }
+        int count = first & 0x7f;
+        if (count == 0 || count > 2 || pos[0] + count > der.length) {
+            throw new SignatureException("Unsupported DER length");
+        }
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length = (length << 8) | (der[pos[0]++] & 0xff);
+        }
+        return length;
+    }
+
+    private static byte[] encodeLength(int length) {
+        if (length < 0x80) {
+            return new byte[]{(byte) length};
+        }
+        if (length < 0x100) {
+            return new byte[]{(byte) 0x81, (byte) length};
+        }
+        return new byte[]{(byte) 0x82, (byte) (length >>> 8), (byte) length};
+    }
+
+    // Minimal positive DER INTEGER (tag, length, value) for an unsigned big-endian number
+    private static byte[] derInteger(byte[] value, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end - 1 && value[start] == 0) {
+            start++;
+        }
+        boolean needsSignByte = (value[start] & 0x80) != 0;
+        int contentLength = end - start + (needsSignByte ? 1 : 0);
+        byte[] lengthBytes = encodeLength(contentLength);
+        byte[] out = new byte[1 + lengthBytes.length + contentLength];
+        out[0] = (byte) TAG_INTEGER;
+        System.arraycopy(lengthBytes, 0, out, 1, lengthBytes.length);
+        int valueStart = 1 + lengthBytes.length + (needsSignByte ? 1 : 0);
+        System.arraycopy(value, start, out, valueStart, end - start);
+        return out;
+    }
+}
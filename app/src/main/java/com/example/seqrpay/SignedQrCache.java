@@ -0,0 +1,166 @@
+package com.example.seqrpay;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Map;
+
+/**
+ * Signed payment-request QR payloads that can be shown again without another keystore signature,
+ * for merchants who display the same fixed-amount codes all day.
+ *
+ * Entries are keyed by (payee, amount, currency, key id), where the key id is a fingerprint of the
+ * payee's public key, so a rotated key never serves a payload signed with the old one. A payload is
+ * reused only while its timestamp is young enough to stay within
+ * {@link PaymentPayloads#PAYMENT_REQUEST_VALIDITY_SECONDS} for at least {@link #MIN_REMAINING_SECONDS}
+ * after it is shown. The payload carries its own fields and timestamp, so it is decoded and checked
+ * against the key on every hit.
+ *
+ * Entries are written through to private SharedPreferences and loaded on first use, so the codes
+ * survive a restart. Expired entries are dropped at load, and evicted ones are removed from disk too.
+ * Do the first call off the main thread. Thread-safe.
+ */
+public class SignedQrCache {
+
+    private static final String TAG = "SignedQrCache";
+    private static final String PREFS_NAME = "seqrpay_signed_qr_cache";
+    private static final int MAX_ENTRIES = 32;
+    private static final int KEY_ID_BYTES = 8;
+
+    // A reused payload must still have this long left to be scanned and paid
+    public static final long MIN_REMAINING_SECONDS = 2 * 60;
+
+    private static volatile SignedQrCache sInstance;
+
+    private final SharedPreferences prefs;
+    private final LruCache<String, String> entries;
+    // Guarded by this
+    private boolean loaded;
+
+    public static SignedQrCache getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (SignedQrCache.class) {
+                if (sInstance == null) {
+                    sInstance = new SignedQrCache(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private SignedQrCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        entries = new LruCache<String, String>(MAX_ENTRIES) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, String oldValue, String newValue) {
+                if (evicted) {
+                    prefs.edit().remove(key).apply();
+                }
+            }
+        };
+    }
+
+    /**
+     * Short fingerprint of a public key: hex of the first bytes of SHA-256 over its X.509 encoding.
+     * @return The key id, or null if the key cannot be encoded.
+     */
+    public static String keyId(PublicKey publicKey) {
+        byte[] encoded = publicKey != null ? publicKey.getEncoded() : null;
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(encoded);
+            StringBuilder sb = new StringBuilder(2 * KEY_ID_BYTES);
+            for (int i = 0; i < KEY_ID_BYTES; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "SHA-256 not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param nowSeconds Current time, epoch seconds.
+     * @return QR text of a fresh payload for exactly these fields, or null on a miss.
+     */
+    public synchronized String get(String payee, long amountMinor, String currency, String keyId, long nowSeconds) {
+        ensureLoaded(nowSeconds);
+        String key = cacheKey(payee, amountMinor, currency, keyId);
+        String qrText = entries.get(key);
+        if (qrText == null) {
+            return null;
+        }
+        PaymentRequestCodec.PaymentRequest request = decode(qrText);
+        if (request == null || !isFresh(request.getEpochSeconds(), nowSeconds)
+                || !request.getPayeeUsername().equals(payee) || request.getAmountMinor() != amountMinor
+                || !request.getCurrency().equals(currency)) {
+            entries.remove(key);
+            prefs.edit().remove(key).apply();
+            return null;
+        }
+        return qrText;
+    }
+
+    /**
+     * Stores a freshly signed payload (QrTransport text) for these fields.
+     */
+    public synchronized void put(String payee, long amountMinor, String currency, String keyId, String qrText) {
+        ensureLoaded(System.currentTimeMillis() / 1000);
+        String key = cacheKey(payee, amountMinor, currency, keyId);
+        entries.put(key, qrText);
+        prefs.edit().putString(key, qrText).apply();
+    }
+
+    public int hitCount() {
+        return entries.hitCount();
+    }
+
+    public int missCount() {
+        return entries.missCount();
+    }
+
+    // Whether a payload signed at epochSeconds may still be shown at nowSeconds
+    static boolean isFresh(long epochSeconds, long nowSeconds) {
+        long age = nowSeconds - epochSeconds;
+        return age >= 0 && age <= PaymentPayloads.PAYMENT_REQUEST_VALIDITY_SECONDS - MIN_REMAINING_SECONDS;
+    }
+
+    private void ensureLoaded(long nowSeconds) {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        SharedPreferences.Editor stale = prefs.edit();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            Object value = entry.getValue();
+            PaymentRequestCodec.PaymentRequest request = value instanceof String ? decode((String) value) : null;
+            if (request != null && isFresh(request.getEpochSeconds(), nowSeconds)) {
+                entries.put(entry.getKey(), (String) value); // Beyond MAX_ENTRIES, evicted from disk too
+            } else {
+                stale.remove(entry.getKey());
+            }
+        }
+        stale.apply();
+        Log.d(TAG, "Loaded " + entries.size() + " signed QR payloads");
+    }
+
+    private static PaymentRequestCodec.PaymentRequest decode(String qrText) {
+        try {
+            return PaymentRequestCodec.decode(QrTransport.decode(qrText));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String cacheKey(String payee, long amountMinor, String currency, String keyId) {
+        return payee + '|' + amountMinor + '|' + currency + '|' + keyId;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.seqrpay;
+
+import android.util.JsonWriter;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes a user's transaction history as a CSV or JSON statement without loading it all.
+ *
+ * Rows are read in keyset windows of windowSize (see DatabaseHelper#getTransactionsPage, which
+ * also reaches archived rows) and written straight to the output, so memory use depends on the
+ * window size only, not on how long the history is. The output format is the one
+ * {@link TransactionImporter} reads, newest row first.
+ *
+ * With an encryption key, the statement is written through SecurityUtils.encryptStream as
+ * chunked AES-GCM (see {@link AesGcmStreams}); SecurityUtils.decryptStream reads it back.
+ * Encryption adds one chunk buffer of memory, however long the statement.
+ *
+ * An exporter runs one export at a time; call export() from a background executor.
+ */
+public class StatementExporter {
+
+    private static final String TAG = "StatementExporter";
+
+    public static final int DEFAULT_WINDOW_SIZE = 500;
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    // Receives progress after every window, on the exporting thread
+    public interface ProgressListener {
+        void onProgress(long rowsWritten, long totalRows);
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final int windowSize;
+    // ISO-8601 date and time in UTC, which TransactionImporter parses back. Milliseconds are kept
+    // so rows come back with the same timestamps, and rows within one second in the same order.
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+    private volatile boolean cancelled;
+
+    public StatementExporter(DatabaseHelper dbHelper) {
+        this(dbHelper, DEFAULT_WINDOW_SIZE);
+    }
+
+    public StatementExporter(DatabaseHelper dbHelper, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        this.dbHelper = dbHelper;
+        this.windowSize = windowSize;
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Stops a running export after the current window. The partial output is not removed;
+     * encrypted partial output lacks its last chunk and does not decrypt.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Writes the whole history of a user to the stream. The stream is flushed but not closed.
+     *
+     * @param out Destination, e.g. a file or content URI stream.
+     * @param format CSV or JSON.
+     * @param userId Owner of the transactions.
+     * @param base64Key AES key for SecurityUtils.encryptStream, or null for a plain statement.
+     * @param listener Progress callback, or null.
+     * @return Number of rows written, or -1 if the export was cancelled.
+     * @throws IOException if writing or encryption fails.
+     */
+    public long export(OutputStream out, TransactionImporter.Format format, long userId,
+                       String base64Key, ProgressListener listener) throws IOException {
+        cancelled = false;
+        long totalRows = dbHelper.getTransactionCount(userId);
+        AesGcmStreams.EncryptingOutputStream sealed = base64Key != null ? SecurityUtils.encryptStream(out, base64Key) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(sealed != null ? sealed : out, StandardCharsets.UTF_8),
+                WRITE_BUFFER_SIZE);
+        JsonWriter json = format == TransactionImporter.Format.JSON ? new JsonWriter(writer) : null;
+
+        if (json != null) {
+            json.beginArray();
+        } else {
+            writer.write("date,description,amount,currency\n");
+        }
+
+        long written = 0;
+        long beforeDate = DatabaseHelper.FIRST_PAGE;
+        long beforeTxId = DatabaseHelper.FIRST_PAGE;
+        while (true) {
+            if (cancelled) {
+                writer.flush();
+                Log.i(TAG, "Export cancelled after " + written + " rows");
+                return -1;
+            }
+            List<Transaction> rows = dbHelper.getTransactionsPage(userId, beforeDate, beforeTxId, windowSize);
+            for (Transaction tx : rows) {
+                if (json != null) {
+                    writeJson(json, tx);
+                } else {
+                    writeCsv(writer, tx);
+                }
+            }
+            written += rows.size();
+            boolean last = rows.size() < windowSize;
+            if (last && json != null) {
+                json.endArray();
+            }
+            if (json != null) {
+                json.flush(); // JsonWriter buffers internally; push the window through to the writer
+            }
+            if (listener != null) {
+                listener.onProgress(written, totalRows);
+            }
+            if (last) {
+                break;
+            }
+            Transaction oldest = rows.get(rows.size() - 1);
+            beforeDate = oldest.getTimestamp();
+            beforeTxId = oldest.getTxId();
+        }
+        writer.flush();
+        if (sealed != null) {
+            sealed.finish(); // Last chunk; leaves out open
+        }
+        Log.i(TAG, "Exported " + written + " transactions for user " + userId);
+        return written;
+    }
+
+    private void writeCsv(Writer writer, Transaction tx) throws IOException {
+        writer.write(dateFormat.format(new Date(tx.getTimestamp())));
+        writer.write(',');
+        writer.write(csvField(tx.getDescription()));
+        writer.write(',');
+        writer.write(MoneyUtils.toDecimalString(tx.getAmountMinor(), tx.getCurrency()));
+        writer.write(',');
+        writer.write(tx.getCurrency());
+        writer.write('\n');
+    }
+
+    // Quotes a field when needed; line breaks become spaces because the importer reads line by line
+    private static String csvField(String value) {
+        if (value == null) return "";
+        String single = value.replace('\r', ' ').replace('\n', ' ');
+        if (single.indexOf(',') < 0 && single.indexOf('"') < 0) {
+            return single;
+        }
+        return '"' + single.replace("\"", "\"\"") + '"';
+    }
+
+    private void writeJson(JsonWriter json, Transaction tx) throws IOException {
+        json.beginObject();
+        json.name("date").value(dateFormat.format(new Date(tx.getTimestamp())));
+        json.name("description").value(tx.getDescription());
+        // A string, so amounts are exact decimals rather than doubles
+        json.name("amount").value(MoneyUtils.toDecimalString(tx.getAmountMinor(), tx.getCurrency()));
+        json.name("currency").value(tx.getCurrency());
+        json.endObject();
+    }
+}
@@ -1,25 +1,46 @@
 package com.example.seqrpay;
 
 public class Transaction {
+    private long txId; // 0 when the row did not come from the database
     private String description;
-    private String amount;
-    private String date;
+    private long amountMinor; // Signed, in minor units of currency (credits positive)
+    private String currency;  // ISO 4217 code
+    private long timestamp;   // Epoch millis
 
-    public Transaction(String description, String amount, String date) {
+    public Transaction(String description, long amountMinor, String currency, long timestamp) {
+        this(0, description, amountMinor, currency, timestamp);
+    }
+
+    public Transaction(long txId, String description, long amountMinor, String currency, long timestamp) {
+        this.txId = txId;
         this.description = description;
-        this.amount = amount;
-        this.date = date;
+        this.amountMinor = amountMinor;
+        this.currency = currency;
+        this.timestamp = timestamp;
+    }
+
+    public long getTxId() {
+        return txId;
     }
 
     public String getDescription() {
         return description;
     }
 
-    public String getAmount() {
-        return amount;
+    public long getAmountMinor() {
+        return amountMinor;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
     }
 
-    public String getDate() {
-        return date;
+    // Display form of the amount, e.g. "+$50.00"
+    public String getFormattedAmount() {
+        return MoneyUtils.format(amountMinor, currency);
     }
 }
@@ -9,10 +9,15 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.ViewHolder> {
     private List<Transaction> transactions;
+    // Only touched from the main thread, so a single shared instance is safe
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
 
     public TransactionAdapter(List<Transaction> transactions) {
         this.transactions = transactions;
@@ -29,11 +34,11 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         Transaction transaction = transactions.get(position);
         holder.tvDescription.setText(transaction.getDescription());
-        holder.tvAmount.setText(transaction.getAmount());
-        holder.tvDate.setText(transaction.getDate());
+        holder.tvAmount.setText(transaction.getFormattedAmount());
+        holder.tvDate.setText(dateFormat.format(new Date(transaction.getTimestamp())));
 
         // Set amount color based on whether it's a credit or debit
-        if (transaction.getAmount().startsWith("+")) {
+        if (transaction.getAmountMinor() >= 0) {
             holder.tvAmount.setTextColor(Color.GREEN);
         } else {
             holder.tvAmount.setTextColor(Color.RED);
@@ -45,6 +50,59 @@ public class TransactionAdapter extends RecyclerView.Adapter<TransactionAdapter.
         return transactions.size();
     }
 
+    // Replaces the whole list, e.g. with search results
+    public void replaceAll(List<Transaction> items) {
+        transactions.clear();
+        transactions.addAll(items);
+        notifyDataSetChanged();
+    }
+
+    // Newest loaded row, or null when empty. Serves as the key for loading newer pages.
+    public Transaction getFirst() {
+        return transactions.isEmpty() ? null : transactions.get(0);
+    }
+
+    // Oldest loaded row, or null when empty. Serves as the key for loading older pages.
+    public Transaction getLast() {
+        return transactions.isEmpty() ? null : transactions.get(transactions.size() - 1);
+    }
+
+    /**
+     * Appends an older page at the end of the list and drops rows from the head
+     * so that no more than maxItems stay in memory.
+     * @return Number of rows dropped from the head.
+     */
+    public int appendOlder(List<Transaction> page, int maxItems) {
+        if (page.isEmpty()) return 0;
+        int start = transactions.size();
+        transactions.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+
+        int overflow = transactions.size() - maxItems;
+        if (overflow <= 0) return 0;
+        transactions.subList(0, overflow).clear();
+        notifyItemRangeRemoved(0, overflow);
+        return overflow;
+    }
+
+    /**
+     * Inserts a newer page at the start of the list and drops rows from the tail
+     * so that no more than maxItems stay in memory.
+     * @return Number of rows dropped from the tail.
+     */
+    public int prependNewer(List<Transaction> page, int maxItems) {
+        if (page.isEmpty()) return 0;
+        transactions.addAll(0, page);
+        notifyItemRangeInserted(0, page.size());
+
+        int overflow = transactions.size() - maxItems;
+        if (overflow <= 0) return 0;
+        int keep = transactions.size() - overflow;
+        transactions.subList(keep, transactions.size()).clear();
+        notifyItemRangeRemoved(keep, overflow);
+        return overflow;
+    }
+
     public static class ViewHolder extends RecyclerView.ViewHolder {
         TextView tvDescription, tvAmount, tvDate;
 
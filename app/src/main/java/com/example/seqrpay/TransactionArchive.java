@@ -0,0 +1,147 @@
+package com.example.seqrpay;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cold storage for transactions older than the archive horizon, in its own database file.
+ *
+ * Moving old rows out keeps the live database small, so its queries, checkpoints and backups only
+ * pay for recent history. Archived rows sit in a WITHOUT ROWID table clustered on the history sort
+ * key: a single B-tree with no rowid, no secondary index and no full-text index, which stores the
+ * same rows in noticeably fewer pages than the live table. Rows are only appended and read.
+ *
+ * A separate helper rather than ATTACH: a connection with an attached database cannot use the
+ * WAL connection pool, and the archive file should not even be opened until a query reaches it.
+ * Only {@link DatabaseHelper} uses this class; it decides when the archive needs to be consulted.
+ */
+public class TransactionArchive extends SQLiteOpenHelper {
+    private static final String TAG = "TransactionArchive";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_ARCHIVE = "archived_transactions";
+    // Same column names as the live transactions table, so rows are read the same way
+    private static final String COLUMN_USER_ID = "user_id";
+    private static final String COLUMN_DATE = "date";
+    private static final String COLUMN_TX_ID = "tx_id";
+    private static final String COLUMN_DESCRIPTION = "description";
+    private static final String COLUMN_AMOUNT = "amount_minor";
+    private static final String COLUMN_CURRENCY = "currency";
+
+    private static final String SELECT_LIST = COLUMN_TX_ID + ", " + COLUMN_DESCRIPTION + ", "
+            + COLUMN_AMOUNT + ", " + COLUMN_CURRENCY + ", " + COLUMN_DATE;
+
+    // The primary key is the keyset order, so every page is one range scan of the table itself
+    private static final String CREATE_TABLE_ARCHIVE =
+            "CREATE TABLE " + TABLE_ARCHIVE + "("
+                    + COLUMN_USER_ID + " INTEGER NOT NULL,"
+                    + COLUMN_DATE + " INTEGER NOT NULL,"
+                    + COLUMN_TX_ID + " INTEGER NOT NULL,"
+                    + COLUMN_DESCRIPTION + " TEXT,"
+                    + COLUMN_AMOUNT + " INTEGER NOT NULL,"
+                    + COLUMN_CURRENCY + " TEXT NOT NULL,"
+                    + "PRIMARY KEY(" + COLUMN_USER_ID + ", " + COLUMN_DATE + ", " + COLUMN_TX_ID + ")"
+                    + ") WITHOUT ROWID";
+
+    TransactionArchive(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        Log.i(TAG, "Creating archive table...");
+        db.execSQL(CREATE_TABLE_ARCHIVE);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only version 1 exists so far
+    }
+
+    /**
+     * Stores rows of one user in a single transaction. Rows already archived (same tx_id and key)
+     * are skipped, so an interrupted move can simply be repeated.
+     * @return true if the rows were committed.
+     */
+    boolean append(long userId, List<Transaction> rows) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_ARCHIVE + "("
+                + COLUMN_USER_ID + ", " + COLUMN_DATE + ", " + COLUMN_TX_ID + ", " + COLUMN_DESCRIPTION + ", "
+                + COLUMN_AMOUNT + ", " + COLUMN_CURRENCY + ") VALUES (?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (Transaction tx : rows) {
+                insert.bindLong(1, userId);
+                insert.bindLong(2, tx.getTimestamp());
+                insert.bindLong(3, tx.getTxId());
+                if (tx.getDescription() == null) {
+                    insert.bindNull(4);
+                } else {
+                    insert.bindString(4, tx.getDescription());
+                }
+                insert.bindLong(5, tx.getAmountMinor());
+                insert.bindString(6, tx.getCurrency());
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error archiving " + rows.size() + " transactions for user " + userId, e);
+            return false;
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    // Archived rows strictly older than the key, newest first
+    List<Transaction> getPage(long userId, long beforeDate, long beforeTxId, int limit) {
+        String sql = "SELECT " + SELECT_LIST + " FROM " + TABLE_ARCHIVE
+                + " WHERE " + COLUMN_USER_ID + " = ?"
+                + " AND (" + COLUMN_DATE + " < ? OR (" + COLUMN_DATE + " = ? AND " + COLUMN_TX_ID + " < ?))"
+                + " ORDER BY " + COLUMN_DATE + " DESC, " + COLUMN_TX_ID + " DESC LIMIT ?";
+        return query(userId, sql, new String[]{String.valueOf(userId), String.valueOf(beforeDate),
+                String.valueOf(beforeDate), String.valueOf(beforeTxId), String.valueOf(limit)}, false);
+    }
+
+    // Archived rows strictly newer than the key and closest to it, newest first
+    List<Transaction> getPageAfter(long userId, long afterDate, long afterTxId, int limit) {
+        String sql = "SELECT " + SELECT_LIST + " FROM " + TABLE_ARCHIVE
+                + " WHERE " + COLUMN_USER_ID + " = ?"
+                + " AND (" + COLUMN_DATE + " > ? OR (" + COLUMN_DATE + " = ? AND " + COLUMN_TX_ID + " > ?))"
+                + " ORDER BY " + COLUMN_DATE + " ASC, " + COLUMN_TX_ID + " ASC LIMIT ?";
+        return query(userId, sql, new String[]{String.valueOf(userId), String.valueOf(afterDate),
+                String.valueOf(afterDate), String.valueOf(afterTxId), String.valueOf(limit)}, true);
+    }
+
+    // Every archived row of a user, newest first
+    List<Transaction> getAll(long userId) {
+        String sql = "SELECT " + SELECT_LIST + " FROM " + TABLE_ARCHIVE
+                + " WHERE " + COLUMN_USER_ID + " = ?"
+                + " ORDER BY " + COLUMN_DATE + " DESC, " + COLUMN_TX_ID + " DESC";
+        return query(userId, sql, new String[]{String.valueOf(userId)}, false);
+    }
+
+    private List<Transaction> query(long userId, String sql, String[] args, boolean reverse) {
+        Cursor cursor = null;
+        try {
+            cursor = this.getReadableDatabase().rawQuery(sql, args);
+            return DatabaseHelper.readTransactions(cursor, reverse);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading archived transactions for user " + userId, e);
+            return new ArrayList<>();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
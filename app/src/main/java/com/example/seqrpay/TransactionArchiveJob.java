@@ -0,0 +1,80 @@
+package com.example.seqrpay;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs {@link DatabaseHelper#archiveTransactionsOlderThan(long, int)} at most once a day.
+ *
+ * The work is split into tasks of ROWS_PER_TASK rows, each posted to AppExecutors.diskWrite(),
+ * so payment writes queued behind the job wait for one task at most instead of the whole backlog.
+ * The horizon (how many days of history stay in the live database) is kept in SharedPreferences.
+ */
+public class TransactionArchiveJob {
+    private static final String TAG = "TransactionArchiveJob";
+    private static final String PREFS_NAME = "TransactionArchivePrefs";
+    private static final String KEY_HORIZON_DAYS = "horizon_days";
+    private static final String KEY_LAST_RUN = "last_run_millis";
+
+    public static final int DEFAULT_HORIZON_DAYS = 365;
+    private static final long MIN_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int ROWS_PER_TASK = 2000;
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Sets how many days of history stay live; older rows go to the archive on the next run.
+     */
+    public static void setHorizonDays(Context context, int days) {
+        if (days < 1) {
+            throw new IllegalArgumentException("Horizon must be at least one day: " + days);
+        }
+        prefs(context).edit().putInt(KEY_HORIZON_DAYS, days).apply();
+    }
+
+    public static int getHorizonDays(Context context) {
+        return prefs(context).getInt(KEY_HORIZON_DAYS, DEFAULT_HORIZON_DAYS);
+    }
+
+    /**
+     * Starts an archive run in the background unless one ran in the last day or is still going.
+     */
+    public static void scheduleIfDue(Context context) {
+        final Context appContext = context.getApplicationContext();
+        long now = System.currentTimeMillis();
+        if (now - prefs(appContext).getLong(KEY_LAST_RUN, 0L) < MIN_INTERVAL_MILLIS
+                || !running.compareAndSet(false, true)) {
+            return;
+        }
+        final long cutoffMillis = now - TimeUnit.DAYS.toMillis(getHorizonDays(appContext));
+        AppExecutors.getInstance().diskWrite().execute(new Runnable() {
+            private int total;
+
+            @Override
+            public void run() {
+                int moved = 0;
+                try {
+                    moved = DatabaseHelper.getInstance(appContext).archiveTransactionsOlderThan(cutoffMillis, ROWS_PER_TASK);
+                    total += moved;
+                } finally {
+                    if (moved >= ROWS_PER_TASK) {
+                        // More to do; requeue so other writes get their turn in between
+                        AppExecutors.getInstance().diskWrite().execute(this);
+                    } else {
+                        prefs(appContext).edit().putLong(KEY_LAST_RUN, System.currentTimeMillis()).apply();
+                        running.set(false);
+                        Log.i(TAG, "Archive run finished, " + total + " transactions moved");
+                    }
+                }
+            }
+        });
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -5,8 +5,13 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ProgressBar; // <<<=== ADDED
 import android.widget.Toast;    // <<<=== ADDED
 
@@ -14,16 +19,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class TransactionHistoryActivity extends AppCompatActivity {
+    // Keyset paging: rows fetched per query, rows kept in memory, and how close to an edge we prefetch
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_LOADED_ITEMS = 4 * PAGE_SIZE;
+    private static final int PREFETCH_DISTANCE = 15;
+    // Search: wait for typing to pause before querying, and cap the result list
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+    private static final int SEARCH_LIMIT = 100;
+
     private RecyclerView recyclerView;
     private Button btnBack;
+    private EditText etSearch;
     private ProgressBar progressBar; // <<<=== ADDED
     private TransactionAdapter adapter;
     private DatabaseHelper dbHelper; // <<<=== ADDED
     private AppExecutors appExecutors; // <<<=== ADDED
     private List<Transaction> transactionList = new ArrayList<>(); // <<<=== ADDED Instance variable
+    private LinearLayoutManager layoutManager;
+    private boolean isLoadingPage = false;
+    private boolean reachedOldest = false;  // No rows older than the tail of the list
+    private boolean hasNewerRows = false;   // Rows were dropped from the head and can be reloaded
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingSearch;
+    private String activeQuery = "";        // Empty while browsing the paged history
+    private int listGeneration = 0;         // Bumped whenever the list switches mode; stale results are dropped
 
-    // --- TODO: Get the logged-in user's ID (e.g., from Intent or SharedPreferences) ---
-    private long currentUserId = 1; // <<<=== PLACEHOLDER - Replace with actual logged-in user ID
+    private long currentUserId = -1; // From the Session set up at login
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,20 +53,57 @@ public class TransactionHistoryActivity extends AppCompatActivity {
 
         recyclerView = findViewById(R.id.recycler_view);
         btnBack = findViewById(R.id.btn_back);
+        etSearch = findViewById(R.id.et_search);
         // Assumes <ProgressBar android:id="@+id/history_progress" .../> added
         progressBar = findViewById(R.id.history_progress); // <<<=== ADDED (Replace with your ID)
 
         dbHelper = DatabaseHelper.getInstance(this); // <<<=== ADDED
+        Session session = Session.get(this);
+        if (session == null) {
+            Toast.makeText(this, "Error: User session not found.", Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+        currentUserId = session.getUserId();
         appExecutors = AppExecutors.getInstance(); // <<<=== ADDED
 
         // Set up RecyclerView
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
         adapter = new TransactionAdapter(transactionList); // Use instance variable
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView rv, int dx, int dy) {
+                if (!activeQuery.isEmpty()) {
+                    return; // Search results are not paged
+                }
+                if (dy > 0 && !reachedOldest
+                        && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadOlderPage();
+                } else if (dy < 0 && hasNewerRows
+                        && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    loadNewerPage();
+                }
+            }
+        });
 
-        // Load transaction data from DB in background <<<=== MODIFIED
+        // Load the first page from DB in background; further pages load as the list scrolls
         loadTransactionData();
 
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                scheduleSearch(s.toString().trim());
+            }
+        });
+
         btnBack.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -56,28 +114,110 @@ public class TransactionHistoryActivity extends AppCompatActivity {
 
     private void loadTransactionData() {
         showLoading(true); // <<<=== ADDED
-        appExecutors.diskIO().execute(() -> {
+        isLoadingPage = true;
+        final int generation = listGeneration;
+        appExecutors.diskRead().execute(() -> {
             // Background thread
-            final List<Transaction> fetchedTransactions = dbHelper.getTransactions(currentUserId);
+            final List<Transaction> firstPage = dbHelper.getTransactionsPage(
+                    currentUserId, DatabaseHelper.FIRST_PAGE, DatabaseHelper.FIRST_PAGE, PAGE_SIZE);
 
             appExecutors.mainThread().execute(() -> {
                 // Main thread
+                if (generation != listGeneration) return;
                 showLoading(false);
-                if (fetchedTransactions != null) {
-                    transactionList.clear();
-                    transactionList.addAll(fetchedTransactions);
-                    adapter.notifyDataSetChanged(); // Update RecyclerView
-                    if (transactionList.isEmpty()){
-                        Toast.makeText(this,"No transactions found.", Toast.LENGTH_SHORT).show();
-                    }
-                } else {
-                    // Handle error case
-                    Toast.makeText(TransactionHistoryActivity.this, "Error loading transaction history", Toast.LENGTH_SHORT).show();
+                isLoadingPage = false;
+                reachedOldest = firstPage.size() < PAGE_SIZE;
+                adapter.appendOlder(firstPage, MAX_LOADED_ITEMS);
+                if (firstPage.isEmpty()) {
+                    Toast.makeText(this, "No transactions found.", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+
+    private void loadOlderPage() {
+        Transaction last = adapter.getLast();
+        if (isLoadingPage || last == null) return;
+        isLoadingPage = true;
+        final int generation = listGeneration;
+        appExecutors.diskRead().execute(() -> {
+            final List<Transaction> page =
+                    dbHelper.getTransactionsPage(currentUserId, last.getTimestamp(), last.getTxId(), PAGE_SIZE);
+
+            appExecutors.mainThread().execute(() -> {
+                if (generation != listGeneration) return;
+                isLoadingPage = false;
+                reachedOldest = page.size() < PAGE_SIZE;
+                if (adapter.appendOlder(page, MAX_LOADED_ITEMS) > 0) {
+                    hasNewerRows = true;
                 }
             });
         });
     }
 
+    private void loadNewerPage() {
+        Transaction first = adapter.getFirst();
+        if (isLoadingPage || first == null) return;
+        isLoadingPage = true;
+        final int generation = listGeneration;
+        appExecutors.diskRead().execute(() -> {
+            final List<Transaction> page =
+                    dbHelper.getTransactionsPageAfter(currentUserId, first.getTimestamp(), first.getTxId(), PAGE_SIZE);
+
+            appExecutors.mainThread().execute(() -> {
+                if (generation != listGeneration) return;
+                isLoadingPage = false;
+                hasNewerRows = page.size() == PAGE_SIZE;
+                if (adapter.prependNewer(page, MAX_LOADED_ITEMS) > 0) {
+                    reachedOldest = false;
+                }
+            });
+        });
+    }
+
+    private void scheduleSearch(String query) {
+        if (pendingSearch != null) {
+            searchHandler.removeCallbacks(pendingSearch);
+        }
+        pendingSearch = () -> runSearch(query);
+        searchHandler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    private void runSearch(String query) {
+        if (query.equals(activeQuery)) return;
+        activeQuery = query;
+        final int generation = ++listGeneration;
+        // Page loads still in flight belong to the old generation and will be dropped before they
+        // clear the loading state, so clear it here
+        isLoadingPage = false;
+        showLoading(false);
+
+        if (query.isEmpty()) {
+            // Back to browsing: restart paging from the newest row
+            reachedOldest = false;
+            hasNewerRows = false;
+            adapter.replaceAll(new ArrayList<>());
+            loadTransactionData();
+            return;
+        }
+
+        appExecutors.diskRead().execute(() -> {
+            final List<Transaction> results = dbHelper.searchTransactions(currentUserId, query, SEARCH_LIMIT);
+            appExecutors.mainThread().execute(() -> {
+                if (generation != listGeneration) return; // A newer query or mode switch won
+                showLoading(false);
+                adapter.replaceAll(results);
+                recyclerView.scrollToPosition(0);
+            });
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        searchHandler.removeCallbacksAndMessages(null);
+        super.onDestroy();
+    }
+
     // Helper method to show/hide progress bar <<<=== ADDED
     private void showLoading(boolean isLoading) {
         if (isLoading) {
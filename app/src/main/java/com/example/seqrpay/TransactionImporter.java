@@ -0,0 +1,252 @@
+package com.example.seqrpay;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams CSV or JSON transaction exports into the database.
+ *
+ * Parsing runs on a worker executor and hands rows to the calling (database) thread through a
+ * bounded queue, so parsing and inserting overlap and memory stays bounded by the queue size.
+ * Rows are written with {@link DatabaseHelper#addTransactions(long, Iterable, int)}.
+ *
+ * CSV: one row per line as date,description,amount,currency with an optional header line.
+ * JSON: an array of {"date", "description", "amount", "currency"} objects.
+ * Amounts are signed decimals ("-25.50"); dates are epoch millis or ISO-8601.
+ */
+public class TransactionImporter {
+
+    private static final String TAG = "TransactionImporter";
+
+    public enum Format { CSV, JSON }
+
+    // End-of-input marker put on the queue by the parser
+    private static final Transaction END_OF_INPUT = new Transaction(null, 0, "", 0);
+
+    private final DatabaseHelper dbHelper;
+    private final Executor parseExecutor;
+    private final int chunkSize;
+
+    /**
+     * @param dbHelper Target database.
+     * @param parseExecutor Where parsing runs; must not be the executor calling importFrom.
+     * @param chunkSize Rows per SQLite transaction.
+     */
+    public TransactionImporter(DatabaseHelper dbHelper, Executor parseExecutor, int chunkSize) {
+        this.dbHelper = dbHelper;
+        this.parseExecutor = parseExecutor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports every row from the stream for the given user. Blocks until done; call it from
+     * AppExecutors.diskWrite(). The stream is closed when parsing ends.
+     *
+     * @return Number of rows committed.
+     * @throws IOException if the input is malformed, or if the database stops before the end of the
+     *     input. Rows committed before the failure stay committed.
+     */
+    public int importFrom(InputStream in, Format format, long userId) throws IOException {
+        final Pipe pipe = new Pipe(2 * chunkSize);
+        parseExecutor.execute(() -> {
+            try (Reader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                if (format == Format.CSV) {
+                    parseCsv((BufferedReader) reader, pipe);
+                } else {
+                    parseJson(reader, pipe);
+                }
+            } catch (Exception e) {
+                pipe.failure = e;
+            } finally {
+                pipe.finish();
+            }
+        });
+
+        int committed = dbHelper.addTransactions(userId, pipe, chunkSize);
+        // Stop the parser if the database gave up early, so it does not block on a full queue
+        pipe.cancelled = true;
+        if (pipe.failure != null) {
+            throw new IOException("Import failed after " + committed + " rows", pipe.failure);
+        }
+        if (!pipe.drained) {
+            // addTransactions logs and returns its count when a chunk fails; the rest was never written
+            throw new IOException("Database stopped the import after " + committed + " rows");
+        }
+        Log.i(TAG, "Imported " + committed + " transactions for user " + userId);
+        return committed;
+    }
+
+    private static void parseCsv(BufferedReader reader, Pipe pipe) throws IOException, InterruptedException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) continue;
+            List<String> fields = splitCsvLine(line);
+            if (lineNumber == 1 && "date".equalsIgnoreCase(fields.get(0).trim())) {
+                continue; // Header
+            }
+            if (fields.size() < 3) {
+                throw new IOException("Line " + lineNumber + ": expected date,description,amount[,currency]");
+            }
+            String currency = fields.size() > 3 && !fields.get(3).trim().isEmpty()
+                    ? fields.get(3).trim() : MoneyUtils.DEFAULT_CURRENCY;
+            if (!pipe.put(toTransaction(fields.get(0), fields.get(1), fields.get(2), currency, lineNumber))) {
+                return;
+            }
+        }
+    }
+
+    // Splits one CSV line, honouring double-quoted fields with "" escapes
+    private static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static void parseJson(Reader in, Pipe pipe) throws IOException, InterruptedException {
+        JsonReader reader = new JsonReader(in);
+        reader.beginArray();
+        int index = 0;
+        while (reader.hasNext()) {
+            index++;
+            String date = null, description = null, amount = null, currency = MoneyUtils.DEFAULT_CURRENCY;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "date": date = reader.nextString(); break;
+                    case "description": description = reader.nextString(); break;
+                    case "amount": amount = reader.nextString(); break;
+                    case "currency": currency = reader.nextString(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+            if (!pipe.put(toTransaction(date, description, amount, currency, index))) {
+                return;
+            }
+        }
+        reader.endArray();
+    }
+
+    private static Transaction toTransaction(String date, String description, String amount,
+                                             String currency, int position) throws IOException {
+        Long timestamp = date != null ? DatabaseMigrations.legacyDateMillis(date) : null;
+        if (timestamp == null) {
+            throw new IOException("Row " + position + ": unreadable date '" + date + "'");
+        }
+        String code = currency.trim().toUpperCase(Locale.US);
+        try {
+            long amountMinor = MoneyUtils.parseMinorUnits(amount, code);
+            return new Transaction(description, amountMinor, code, timestamp);
+        } catch (NumberFormatException | ArithmeticException | NullPointerException e) {
+            throw new IOException("Row " + position + ": invalid amount '" + amount + "'", e);
+        }
+    }
+
+    // Bounded hand-off from the parser thread to the database thread
+    private static final class Pipe implements Iterable<Transaction> {
+        private final BlockingQueue<Transaction> queue;
+        volatile Exception failure;
+        volatile boolean cancelled;
+        // Set once the consumer has taken the end-of-input marker, i.e. read every row
+        volatile boolean drained;
+
+        Pipe(int capacity) {
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // Returns false once the consumer has stopped, telling the parser to quit
+        boolean put(Transaction tx) throws InterruptedException {
+            while (!cancelled) {
+                if (queue.offer(tx, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void finish() {
+            try {
+                while (!cancelled && !queue.offer(END_OF_INPUT, 100, TimeUnit.MILLISECONDS)) {
+                    // Wait for room, unless the consumer is gone
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public Iterator<Transaction> iterator() {
+            return new Iterator<Transaction>() {
+                private Transaction next;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == null) {
+                        try {
+                            next = queue.take();
+                            drained = next == END_OF_INPUT;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            next = END_OF_INPUT;
+                        }
+                    }
+                    return next != END_OF_INPUT;
+                }
+
+                @Override
+                public Transaction next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    Transaction tx = next;
+                    next = null;
+                    return tx;
+                }
+            };
+        }
+    }
+}
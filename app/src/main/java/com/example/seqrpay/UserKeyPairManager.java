@@ -22,6 +22,9 @@ public class UserKeyPairManager {
     private static final String PUBLIC_KEY_PREF_PREFIX = "user_public_key_";
     // Prefix for the alias used in Android Keystore for the user's key pair.
     public static final String KEYSTORE_ALIAS_PREFIX = "seqrpay_user_key_"; // Made public for potential external use/reference
+    // Decoded public keys of recently seen users/payees
+    private static final int MAX_CACHED_PUBLIC_KEYS = 64;
+    private static final PayeeKeyCache PUBLIC_KEYS = new PayeeKeyCache(MAX_CACHED_PUBLIC_KEYS);
 
     /**
      * Ensures that an ECDSA key pair exists for the given username.
@@ -50,8 +53,7 @@ public class UserKeyPairManager {
         } else {
             // Check if Keystore still has the keys, SharedPreferences might be out of sync or keys were cleared
             try {
-                if (SecurityUtils.getPrivateKeyFromKeystore(keystoreAlias) == null ||
-                    SecurityUtils.getPublicKeyFromKeystore(keystoreAlias) == null) {
+                if (!SecurityUtils.hasKeyPair(keystoreAlias)) {
                     Log.w(TAG, "Key not found in Keystore despite being in SharedPreferences for user: " + username + ". Regenerating.");
                     needsGeneration = true;
                 }
@@ -69,6 +71,8 @@ public class UserKeyPairManager {
                     String encodedPublicKey = SecurityUtils.encodePublicKey(keyPair.getPublic());
                     if (encodedPublicKey != null) {
                         prefs.edit().putString(prefKeyForPublicKey, encodedPublicKey).apply();
+                        PUBLIC_KEYS.invalidate(username); // Key rotated
+
                         Log.i(TAG, "Successfully generated and stored new key pair for user: " + username);
                     } else {
                         Log.e(TAG, "Failed to encode public key for user: " + username);
@@ -126,10 +130,15 @@ public class UserKeyPairManager {
         String encodedPublicKeyFromPrefs = prefs.getString(prefKeyForPublicKey, null);
 
         if (encodedPublicKeyFromPrefs != null) {
+            PublicKey cached = PUBLIC_KEYS.get(username, encodedPublicKeyFromPrefs);
+            if (cached != null) {
+                return cached; // Same encoded key as last time; no decode needed
+            }
             try {
                 PublicKey publicKey = SecurityUtils.decodePublicKey(encodedPublicKeyFromPrefs);
                 if (publicKey != null) {
                     Log.d(TAG, "Retrieved public key from SharedPreferences for user: " + username);
+                    PUBLIC_KEYS.put(username, encodedPublicKeyFromPrefs, publicKey);
                     return publicKey;
                 } else {
                     Log.w(TAG, "Failed to decode public key from SharedPreferences for user: " + username + ". Attempting Keystore fallback.");
@@ -152,6 +161,7 @@ public class UserKeyPairManager {
                 String encodedFromKeystore = SecurityUtils.encodePublicKey(publicKeyFromKeystore);
                 if (encodedFromKeystore != null && (encodedPublicKeyFromPrefs == null || !encodedFromKeystore.equals(encodedPublicKeyFromPrefs))) {
                     prefs.edit().putString(prefKeyForPublicKey, encodedFromKeystore).apply();
+                    PUBLIC_KEYS.put(username, encodedFromKeystore, publicKeyFromKeystore);
                     Log.i(TAG, "Updated SharedPreferences with public key from Keystore for user: " + username);
                 }
                 return publicKeyFromKeystore;
@@ -164,6 +174,20 @@ public class UserKeyPairManager {
         return null;
     }
 
+    /**
+     * Drops the cached public key of a user or payee, e.g. when a directory reports a new key.
+     */
+    public static void invalidatePublicKey(String username) {
+        PUBLIC_KEYS.invalidate(username);
+    }
+
+    /**
+     * Cache of decoded public keys, for reading its hit/miss counters.
+     */
+    public static PayeeKeyCache getPublicKeyCache() {
+        return PUBLIC_KEYS;
+    }
+
     /**
      * Retrieves the public key for a given payee username.
      *
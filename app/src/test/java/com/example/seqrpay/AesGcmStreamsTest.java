@@ -0,0 +1,145 @@
+package com.example.seqrpay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips and tamper checks for the chunked AES-GCM stream format.
+ */
+public class AesGcmStreamsTest {
+    private static final int CHUNK = 1024;
+    private static final byte[] KEY = new byte[32];
+    private static final byte[] OTHER_KEY = new byte[32];
+
+    static {
+        new Random(1).nextBytes(KEY);
+        new Random(2).nextBytes(OTHER_KEY);
+    }
+
+    @Test
+    public void roundTripsAroundChunkBoundaries() throws IOException {
+        int[] sizes = {0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 3 * CHUNK, 3 * CHUNK + 5};
+        for (int size : sizes) {
+            byte[] plain = randomBytes(size, size);
+            byte[] sealed = encrypt(plain, KEY);
+            assertEquals("size " + size, AesGcmStreams.ciphertextLength(size, CHUNK), sealed.length);
+            assertArrayEquals("size " + size, plain, decrypt(sealed, KEY));
+        }
+    }
+
+    @Test
+    public void singleByteWritesAndReadsMatchBulk() throws IOException {
+        byte[] plain = randomBytes(2 * CHUNK + 17, 7);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream out = AesGcmStreams.newEncryptingStream(sink, KEY, CHUNK);
+        for (byte b : plain) {
+            out.write(b);
+        }
+        out.close();
+
+        InputStream in = AesGcmStreams.newDecryptingStream(new ByteArrayInputStream(sink.toByteArray()), KEY);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            result.write(b);
+        }
+        assertArrayEquals(plain, result.toByteArray());
+    }
+
+    @Test
+    public void sameInputEncryptsDifferently() throws IOException {
+        byte[] plain = randomBytes(100, 3);
+        assertEquals(false, Arrays.equals(encrypt(plain, KEY), encrypt(plain, KEY)));
+    }
+
+    @Test
+    public void rejectsWrongKey() throws IOException {
+        assertFails(encrypt(randomBytes(CHUNK + 1, 4), KEY), OTHER_KEY);
+    }
+
+    @Test
+    public void rejectsFlippedBytes() throws IOException {
+        byte[] sealed = encrypt(randomBytes(2 * CHUNK, 5), KEY);
+        // Header (AAD), a framing byte, ciphertext of the first chunk, tag of the last chunk
+        int[] positions = {4, AesGcmStreams.HEADER_LENGTH + 3, AesGcmStreams.HEADER_LENGTH + 10, sealed.length - 1};
+        for (int position : positions) {
+            byte[] tampered = sealed.clone();
+            tampered[position] ^= 1;
+            assertFails(tampered, KEY);
+        }
+    }
+
+    @Test
+    public void rejectsTruncationAndTrailingData() throws IOException {
+        int chunkRecord = 4 + CHUNK + 16;
+        byte[] sealed = encrypt(randomBytes(3 * CHUNK, 6), KEY);
+        // Cut inside the last chunk, and cleanly at the chunk boundary before it
+        assertFails(Arrays.copyOf(sealed, sealed.length - 1), KEY);
+        assertFails(Arrays.copyOf(sealed, AesGcmStreams.HEADER_LENGTH + 2 * chunkRecord), KEY);
+        assertFails(Arrays.copyOf(sealed, sealed.length + 1), KEY);
+    }
+
+    @Test
+    public void rejectsReorderedChunks() throws IOException {
+        int chunkRecord = 4 + CHUNK + 16;
+        byte[] sealed = encrypt(randomBytes(3 * CHUNK, 8), KEY);
+        byte[] swapped = sealed.clone();
+        int first = AesGcmStreams.HEADER_LENGTH;
+        System.arraycopy(sealed, first, swapped, first + chunkRecord, chunkRecord);
+        System.arraycopy(sealed, first + chunkRecord, swapped, first, chunkRecord);
+        assertFails(swapped, KEY);
+    }
+
+    private static byte[] encrypt(byte[] plain, byte[] key) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = AesGcmStreams.newEncryptingStream(sink, key, CHUNK)) {
+            // Uneven writes so chunks never line up with write calls
+            int offset = 0;
+            int step = 1;
+            while (offset < plain.length) {
+                int n = Math.min(step, plain.length - offset);
+                out.write(plain, offset, n);
+                offset += n;
+                step = step * 3 + 1;
+            }
+        }
+        return sink.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] sealed, byte[] key) throws IOException {
+        InputStream in = AesGcmStreams.newDecryptingStream(new ByteArrayInputStream(sealed), key);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[700];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            result.write(buffer, 0, n);
+        }
+        return result.toByteArray();
+    }
+
+    private static void assertFails(byte[] sealed, byte[] key) {
+        try {
+            decrypt(sealed, key);
+            fail("Tampered stream decrypted");
+        } catch (IOException expected) {
+            // Authentication or framing failure
+        }
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
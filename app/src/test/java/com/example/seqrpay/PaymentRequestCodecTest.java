@@ -0,0 +1,140 @@
+package com.example.seqrpay;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Binary payment-request encoding and its QR text transport.
+ */
+public class PaymentRequestCodecTest {
+
+    @Test
+    public void roundTripsSignedRequest() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+
+        byte[] body = PaymentRequestCodec.encodeBody("merchant", 150000, "KZT", 1760000000L,
+                SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+        Signature signer = Signature.getInstance("SHA256withECDSAinP1363Format");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(body);
+        byte[] signature = signer.sign();
+
+        String qrText = QrTransport.encode(PaymentRequestCodec.appendSignature(body, signature));
+        assertTrue(QrTransport.isBinaryPayload(qrText));
+        assertTrue("Payload too long: " + qrText.length(), qrText.length() < 140);
+
+        PaymentRequestCodec.PaymentRequest request = PaymentRequestCodec.decode(QrTransport.decode(qrText));
+        assertEquals("merchant", request.getPayeeUsername());
+        assertEquals(150000, request.getAmountMinor());
+        assertEquals("KZT", request.getCurrency());
+        assertEquals(1760000000L, request.getEpochSeconds());
+        assertEquals(SecurityUtils.SIGNATURE_ALGORITHM_P1363, request.getSignatureAlgorithm());
+        assertArrayEquals(body, request.getSignedBody());
+        assertArrayEquals(signature, request.getSignature());
+
+        // The decoded body is exactly what was signed
+        Signature verifier = Signature.getInstance("SHA256withECDSAinP1363Format");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(request.getSignedBody());
+        assertTrue(verifier.verify(request.getSignature()));
+    }
+
+    @Test
+    public void roundTripsVarintBoundaries() {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE};
+        byte[] signature = new byte[64];
+        for (long value : values) {
+            byte[] body = PaymentRequestCodec.encodeBody("u", value, "USD", value,
+                    SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+            PaymentRequestCodec.PaymentRequest request =
+                    PaymentRequestCodec.decode(PaymentRequestCodec.appendSignature(body, signature));
+            assertEquals(value, request.getAmountMinor());
+            assertEquals(value, request.getEpochSeconds());
+        }
+    }
+
+    @Test
+    public void base64UrlMatchesJdk() {
+        Random random = new Random(42);
+        for (int length = 0; length < 70; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = QrTransport.base64UrlEncode(data);
+            assertEquals(java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(data), encoded);
+            assertArrayEquals(data, QrTransport.base64UrlDecode(encoded));
+        }
+    }
+
+    @Test
+    public void rejectsCorruptPayloads() {
+        byte[] body = PaymentRequestCodec.encodeBody("merchant", 500, "USD", 1760000000L,
+                SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+        byte[] payload = PaymentRequestCodec.appendSignature(body, new byte[64]);
+
+        // Every truncation is rejected
+        for (int length = 0; length < payload.length; length++) {
+            assertRejected(Arrays.copyOf(payload, length));
+        }
+        byte[] badVersion = payload.clone();
+        badVersion[0] = 9;
+        assertRejected(badVersion);
+        byte[] badAlgorithm = payload.clone();
+        badAlgorithm[1] = 0x7f;
+        assertRejected(badAlgorithm);
+        assertRejected(Arrays.copyOf(payload, payload.length + 1));
+
+        assertFalse(QrTransport.isBinaryPayload("{\"type\":\"paymentRequest\"}"));
+        try {
+            QrTransport.decode(QrTransport.BASE64_PREFIX + "abc$");
+            fail("Accepted invalid base64url");
+        } catch (IllegalArgumentException expected) {
+            // Rejected as it should be
+        }
+    }
+
+    @Test
+    public void rejectsUnrepresentableFields() {
+        String[][] bad = {{"", "USD"}, {"merchant", "usd"}, {"merchant", "US"}};
+        for (String[] fields : bad) {
+            try {
+                PaymentRequestCodec.encodeBody(fields[0], 1, fields[1], 0, SecurityUtils.SIGNATURE_ALGORITHM);
+                fail("Accepted " + Arrays.toString(fields));
+            } catch (IllegalArgumentException expected) {
+                // Rejected as it should be
+            }
+        }
+        byte[] longName = new byte[256];
+        Arrays.fill(longName, (byte) 'a');
+        try {
+            PaymentRequestCodec.encodeBody(new String(longName, StandardCharsets.US_ASCII), 1, "USD", 0,
+                    SecurityUtils.SIGNATURE_ALGORITHM);
+            fail("Accepted a 256-byte payee");
+        } catch (IllegalArgumentException expected) {
+            // Rejected as it should be
+        }
+    }
+
+    private static void assertRejected(byte[] payload) {
+        try {
+            PaymentRequestCodec.decode(payload);
+            fail("Accepted " + Arrays.toString(payload));
+        } catch (IllegalArgumentException expected) {
+            // Rejected as it should be
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.seqrpay;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.common.BitMatrix;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * QrRenderer's pixel stage, and its allocations against the per-pixel rendering
+ * GenerateQrActivity used before. Bitmaps are not available in local tests;
+ * QrRendererBenchmarkTest times the whole render path on a device.
+ */
+public class QrRendererTest {
+
+    private static final int TARGET_PX = 600;
+    private static final int WARMUP = 50;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void rasterizeScalesModules() {
+        BitMatrix modules = new BitMatrix(3);
+        modules.set(0, 0);
+        modules.set(1, 0);
+        modules.set(2, 1);
+        int[] pixels = new int[36];
+        QrRenderer.rasterize(modules, 2, pixels);
+
+        int d = QrRenderer.DARK;
+        int l = QrRenderer.LIGHT;
+        int[] expectedRows = {d, d, d, d, l, l, l, l, l, l, d, d, l, l, l, l, l, l};
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 6; x++) {
+                assertEquals("pixel " + x + "," + y, expectedRows[(y / 2) * 6 + x], pixels[y * 6 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void rendersWholeModulesWithinTarget() throws Exception {
+        QrRenderer renderer = new QrRenderer();
+        String content = samplePayload();
+        int side = renderer.renderPixels(content, TARGET_PX);
+        assertTrue(side <= TARGET_PX);
+
+        BitMatrix modules = new MultiFormatWriter().encode(content, BarcodeFormat.QR_CODE, 0, 0, QrTransport.encodeHints());
+        int moduleSize = side / modules.getWidth();
+        assertEquals(side, moduleSize * modules.getWidth());
+        assertTrue(TARGET_PX - side < modules.getWidth()); // Less than one module per side left unused
+        int[] pixels = renderer.pixels();
+        for (int y = 0; y < modules.getHeight(); y++) {
+            for (int x = 0; x < modules.getWidth(); x++) {
+                int expected = modules.get(x, y) ? QrRenderer.DARK : QrRenderer.LIGHT;
+                assertEquals(expected, pixels[(y * moduleSize + moduleSize - 1) * side + x * moduleSize]);
+            }
+        }
+        assertEquals(-1, renderer.renderPixels("", TARGET_PX));
+    }
+
+    /**
+     * Bytes allocated per render. Fails if the renderer allocates as much as the per-pixel path,
+     * which would mean buffer reuse is broken. Skipped on JVMs that cannot count allocations.
+     */
+    @Test
+    public void allocatesLessThanPerPixelRendering() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled());
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        String content = samplePayload();
+        QrRenderer renderer = new QrRenderer();
+
+        long legacy = allocatedPerRender(allocations, () -> legacyPixels(content));
+        long pooled = allocatedPerRender(allocations, () -> renderer.renderPixels(content, TARGET_PX));
+        assertTrue(pooled + " vs " + legacy + " bytes per render", pooled < legacy);
+    }
+
+    // What encodeAsBitmap did before QrRenderer, minus the bitmap
+    private static int legacyPixels(String content) throws Exception {
+        BitMatrix result = new MultiFormatWriter().encode(content, BarcodeFormat.QR_CODE, TARGET_PX, TARGET_PX, null);
+        int w = result.getWidth();
+        int h = result.getHeight();
+        int[] pixels = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            int offset = y * w;
+            for (int x = 0; x < w; x++) {
+                pixels[offset + x] = result.get(x, y) ? QrRenderer.DARK : QrRenderer.LIGHT;
+            }
+        }
+        return pixels[0];
+    }
+
+    private interface Render {
+        int run() throws Exception;
+    }
+
+    // Average bytes allocated per render over ROUNDS, after warming up
+    private static long allocatedPerRender(com.sun.management.ThreadMXBean threads, Render render) throws Exception {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            render.run();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            render.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / ROUNDS;
+    }
+
+    private static String samplePayload() {
+        byte[] signature = new byte[SignatureFormats.P256_P1363_LENGTH];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = (byte) (i * 37);
+        }
+        byte[] body = PaymentRequestCodec.encodeBody("merchant", 150000, "KZT", 1760000000L,
+                SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+        return QrTransport.encode(PaymentRequestCodec.appendSignature(body, signature));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.seqrpay;
+
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Base45 transport encoding, and how its QR codes compare with base64url and the legacy JSON payload.
+ */
+public class QrTransportTest {
+
+    private static final String[] CURRENCIES = {"USD", "EUR", "KZT", "JPY", "GBP"};
+
+    @Test
+    public void base45MatchesRfc9285Examples() {
+        String[][] vectors = {{"AB", "BB8"}, {"Hello!!", "%69 VD92EX0"}, {"base-45", "UJCLQE7W581"},
+                {"ietf!", "QED8WEX0"}, {"", ""}};
+        for (String[] vector : vectors) {
+            byte[] data = vector[0].getBytes(StandardCharsets.US_ASCII);
+            assertEquals(vector[1], QrTransport.base45Encode(data));
+            assertArrayEquals(data, QrTransport.base45Decode(vector[1]));
+        }
+    }
+
+    @Test
+    public void base45RoundTripsAllLengthsAndBytes() {
+        Random random = new Random(42);
+        for (int length = 0; length < 70; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertArrayEquals(data, QrTransport.decode(QrTransport.encode(data)));
+        }
+        byte[] extremes = {0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        assertArrayEquals(extremes, QrTransport.decode(QrTransport.encode(extremes)));
+    }
+
+    @Test
+    public void rejectsInvalidBase45() {
+        String[] bad = {"A", "ABCD", "GGW", "aBC", "AB#"}; // Bad lengths, triple > 0xffff, lower case, '#'
+        for (String text : bad) {
+            try {
+                QrTransport.decode(QrTransport.BASE45_PREFIX + text);
+                fail("Accepted " + text);
+            } catch (IllegalArgumentException expected) {
+                // Rejected as it should be
+            }
+        }
+    }
+
+    /**
+     * A corpus of payment requests in each transport: Base45 must use alphanumeric mode, never need
+     * a larger QR version than base64url, need a smaller one than the legacy JSON, and decode back
+     * to the same request. QrTransportBenchmarkTest reports the sizes and decode times on a device.
+     */
+    @Test
+    public void compareTransportsOverCorpus() throws Exception {
+        Random random = new Random(7);
+        List<byte[]> payloads = new ArrayList<>();
+        List<String> legacyJson = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String payee = randomUsername(random);
+            String currency = CURRENCIES[random.nextInt(CURRENCIES.length)];
+            long amountMinor = 1 + random.nextInt(10000000);
+            long epochSeconds = 1760000000L + random.nextInt(30000000);
+            byte[] signature = new byte[SignatureFormats.P256_P1363_LENGTH];
+            random.nextBytes(signature);
+            byte[] body = PaymentRequestCodec.encodeBody(payee, amountMinor, currency, epochSeconds,
+                    SecurityUtils.SIGNATURE_ALGORITHM_P1363);
+            payloads.add(PaymentRequestCodec.appendSignature(body, signature));
+            legacyJson.add(legacyJson(payee, MoneyUtils.toDecimalString(amountMinor, currency), currency,
+                    epochSeconds, signature));
+        }
+
+        for (int i = 0; i < payloads.size(); i++) {
+            String[] texts = {
+                    QrTransport.encode(payloads.get(i)),
+                    QrTransport.encodeBase64Url(payloads.get(i)),
+                    legacyJson.get(i)};
+            QRCode[] codes = new QRCode[texts.length];
+            for (int t = 0; t < texts.length; t++) {
+                codes[t] = Encoder.encode(texts[t], QrTransport.QR_ERROR_CORRECTION, QrTransport.encodeHints());
+            }
+            assertEquals(Mode.ALPHANUMERIC, codes[0].getMode());
+            assertEquals(Mode.BYTE, codes[1].getMode());
+            assertTrue("Base45 needs a larger QR than base64 for " + texts[1],
+                    codes[0].getVersion().getVersionNumber() <= codes[1].getVersion().getVersionNumber());
+            assertTrue("Base45 needs no smaller QR than legacy JSON for " + texts[2],
+                    codes[0].getVersion().getVersionNumber() < codes[2].getVersion().getVersionNumber());
+            assertArrayEquals(payloads.get(i), QrTransport.decode(texts[0]));
+            assertArrayEquals(payloads.get(i), QrTransport.decode(texts[1]));
+        }
+    }
+
+    private static String randomUsername(Random random) {
+        String letters = "abcdefghijklmnopqrstuvwxyz0123456789";
+        int length = 4 + random.nextInt(12);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        return sb.toString();
+    }
+
+    // The JSON payload GenerateQrActivity produced before the binary codec, field for field
+    private static String legacyJson(String payee, String amount, String currency, long epochSeconds,
+                                     byte[] signature) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String timestamp = sdf.format(new Date(epochSeconds * 1000));
+        String fields = "\"payeeUsername\":\"" + payee + "\",\"amount\":\"" + amount
+                + "\",\"currency\":\"" + currency + "\",\"timestamp\":\"" + timestamp + "\"";
+        return "{\"type\":\"paymentRequest\",\"version\":\"1.0\"," + fields
+                + ",\"dataToSign\":{" + fields + "}"
+                + ",\"signatureAlgorithm\":\"" + SecurityUtils.SIGNATURE_ALGORITHM_P1363 + "\""
+                + ",\"signature\":\"" + java.util.Base64.getEncoder().encodeToString(signature) + "\"}";
+    }
+}
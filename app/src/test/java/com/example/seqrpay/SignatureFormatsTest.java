@@ -0,0 +1,92 @@
+package com.example.seqrpay;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * DER <-> P1363 conversion, checked against the JDK's own P1363 signature algorithm.
+ */
+public class SignatureFormatsTest {
+    private static final byte[] DATA = "amount=1500&currency=KZT&payeeUsername=merchant".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void convertedSignaturesVerifyInBothFormats() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+
+        // Enough signatures to hit r or s with leading zero bytes and with the high bit set
+        for (int i = 0; i < 200; i++) {
+            Signature signer = Signature.getInstance("SHA256withECDSA");
+            signer.initSign(keyPair.getPrivate());
+            signer.update(DATA);
+            byte[] der = signer.sign();
+
+            byte[] p1363 = SignatureFormats.derToP1363(der, SignatureFormats.P256_FIELD_BYTES);
+            assertEquals(SignatureFormats.P256_P1363_LENGTH, p1363.length);
+            assertTrue(verify("SHA256withECDSAinP1363Format", keyPair, p1363));
+            // Re-encoding gives the canonical DER the JDK produced
+            assertArrayEquals(der, SignatureFormats.p1363ToDer(p1363));
+        }
+    }
+
+    @Test
+    public void handlesLeadingZerosAndSignBytes() throws Exception {
+        byte[] p1363 = new byte[64];
+        p1363[2] = 0x7f;           // r has two leading zero bytes
+        p1363[31] = 1;
+        p1363[32] = (byte) 0x80;   // s needs a sign byte in DER
+        p1363[63] = 1;
+        byte[] der = SignatureFormats.p1363ToDer(p1363);
+        assertEquals(0x02, der[2]);
+        assertEquals(30, der[3]);  // r: 32 - 2 zero bytes
+        assertEquals(0x02, der[4 + 30]);
+        assertEquals(33, der[5 + 30]); // s: sign byte + 32
+        assertArrayEquals(p1363, SignatureFormats.derToP1363(der, 32));
+    }
+
+    @Test
+    public void rejectsMalformedInput() {
+        byte[][] bad = {
+                null,
+                new byte[0],
+                {0x30, 0x06, 0x02, 0x01, 0x01, 0x02, 0x01},              // Truncated
+                {0x31, 0x06, 0x02, 0x01, 0x01, 0x02, 0x01, 0x01},        // Not a SEQUENCE
+                {0x30, 0x06, 0x02, 0x01, (byte) 0x81, 0x02, 0x01, 0x01}, // Negative r
+                {0x30, 0x07, 0x02, 0x01, 0x01, 0x02, 0x01, 0x01, 0x00},  // Trailing byte
+        };
+        for (byte[] der : bad) {
+            try {
+                SignatureFormats.derToP1363(der, 32);
+                fail("Accepted " + Arrays.toString(der));
+            } catch (SignatureException expected) {
+                // Rejected as it should be
+            }
+        }
+        try {
+            SignatureFormats.p1363ToDer(new byte[63]);
+            fail("Accepted odd-length P1363");
+        } catch (SignatureException expected) {
+            // Rejected as it should be
+        }
+    }
+
+    private static boolean verify(String algorithm, KeyPair keyPair, byte[] signature) throws Exception {
+        Signature verifier = Signature.getInstance(algorithm);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(DATA);
+        return verifier.verify(signature);
+    }
+}
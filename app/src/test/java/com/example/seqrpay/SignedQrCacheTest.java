@@ -0,0 +1,45 @@
+package com.example.seqrpay;
+
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SignedQrCache's freshness rule and key ids; storage needs a device.
+ */
+public class SignedQrCacheTest {
+
+    @Test
+    public void reusesOnlyWellInsideValidityWindow() {
+        long now = 1760000000L;
+        long lastReusable = PaymentPayloads.PAYMENT_REQUEST_VALIDITY_SECONDS - SignedQrCache.MIN_REMAINING_SECONDS;
+        assertTrue(SignedQrCache.isFresh(now, now));
+        assertTrue(SignedQrCache.isFresh(now - lastReusable, now));
+        assertFalse(SignedQrCache.isFresh(now - lastReusable - 1, now));
+        assertFalse(SignedQrCache.isFresh(now - PaymentPayloads.PAYMENT_REQUEST_VALIDITY_SECONDS, now));
+        // Signed "in the future": the clock was moved back, so the age is unknown
+        assertFalse(SignedQrCache.isFresh(now + 1, now));
+    }
+
+    @Test
+    public void keyIdIdentifiesThePublicKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair first = generator.generateKeyPair();
+        KeyPair second = generator.generateKeyPair();
+
+        String id = SignedQrCache.keyId(first.getPublic());
+        assertEquals(16, id.length());
+        assertEquals(id, SignedQrCache.keyId(first.getPublic()));
+        assertNotEquals(id, SignedQrCache.keyId(second.getPublic()));
+        assertNull(SignedQrCache.keyId(null));
+    }
+}